@@ -33,11 +33,28 @@ public class Constants {
 	public static final String TEXTURE_FIELD_NAME = "TEXTURE_REF";
 	
 	public static final int DEPTH_DEFAULT = 0;
+
+	/**
+	 * Default cell size of a {@link io.sly.helix.game.entities.SpatialHashGrid} (px)
+	 */
+	public static final float SPATIAL_CELL_SIZE = 64f;
+
+	/**
+	 * Default simulation tick rate (Hz). 0 runs one tick per frame with the frame delta
+	 */
+	public static final int DEFAULT_TICK_RATE = 0;
+	/**
+	 * Default most ticks run in a single frame to catch up with real time
+	 */
+	public static final int DEFAULT_MAX_CATCH_UP_STEPS = 5;
 	
 	// ERROR CONSTANTS
 	public static final int ERR_NO_ROOM = -1;
 	public static final int ERR_RES_LOAD_FAIL = -2;
 	public static final int ERR_RES_NOT_FOUND = -3;
+	public static final int ERR_NO_HANDLES = -4;
+	public static final int ERR_POOL = -5;
+	public static final int ERR_RES_WRITE_FAIL = -6;
 
 	// Background clear Color
 	public static Color CLEAR_COLOR = new Color(0, 0, 0, 1);
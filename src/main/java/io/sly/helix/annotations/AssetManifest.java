@@ -0,0 +1,46 @@
+package io.sly.helix.annotations;
+
+import io.sly.helix.exception.HelixException;
+
+/**
+ * Every {@link QueueAsset} field of a class, found at compile time
+ * <br><br>
+ * {@link QueueAssetProcessor} generates one of these for each class with
+ * {@link QueueAsset} fields, and lists them in
+ * META-INF/services/io.sly.helix.annotations.AssetManifest.
+ * {@link io.sly.helix.game.Data#queueAllTextures} loads them with a
+ * {@link java.util.ServiceLoader} rather than scanning every class of the game
+ * for the annotation
+ * @author Sly
+ *
+ * @see {@link QueueAssetProcessor}
+ */
+public interface AssetManifest {
+
+	/**
+	 * Queues an asset to load, before its field is set
+	 */
+	public interface AssetQueue {
+		/**
+		 * @param ref - {@link QueueAsset#ref} of the field
+		 * @param type - {@link QueueAsset#type} of the field
+		 * @return - value to set the field to
+		 * @throws HelixException if the asset can't be queued
+		 */
+		public String queue(String ref, Class<?> type) throws HelixException;
+	}
+
+	/**
+	 * @return - package of the class whose fields this manifest sets
+	 */
+	public String getPackage();
+
+	/**
+	 * Queue the asset of every field of the class, and set each field to what
+	 * the queue returns for it
+	 * @param queue - queue to add the assets to
+	 * @return - number of assets queued
+	 * @throws HelixException if an asset can't be queued
+	 */
+	public int queue(AssetQueue queue) throws HelixException;
+}
@@ -0,0 +1,295 @@
+package io.sly.helix.annotations;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Finds the {@link QueueAsset} fields at compile time, and generates an
+ * {@link AssetManifest} for each class that has any, named after the class
+ * and {@link QueueAssetProcessor#MANIFEST_NAME}, e.g.
+ * <code>Outer_Inner_HelixAssetManifest</code> for <code>Outer.Inner</code>.
+ * The manifests set the fields directly, so loading the game's assets needs
+ * neither a class scan nor reflection
+ * <br><br>
+ * Each class gets its own manifest, so an incremental build that only
+ * recompiles some classes regenerates only their manifests. The service file
+ * listing the manifests is merged with the one already in the output, minus
+ * the manifests of recompiled classes that no longer have annotated fields
+ * <br><br>
+ * Annotated fields must be public, static, not final, and able to hold a
+ * String, in a class that isn't private. Anything else is a compile error
+ * <br><br>
+ * The processor is registered in the engine's
+ * META-INF/services/javax.annotation.processing.Processor, so javac runs it
+ * on any game compiled against the engine. From JDK 22 on, javac only does
+ * so when asked to, with -proc:full or the processor named in the build's
+ * annotationProcessorPaths
+ * @author Sly
+ *
+ * @see {@link io.sly.helix.game.Data#queueAllTextures}
+ */
+// Every annotation, so it also runs on compiles where a class lost its last annotated field
+@SupportedAnnotationTypes("*")
+public class QueueAssetProcessor extends AbstractProcessor {
+
+	/**
+	 * Suffix of the simple name of the generated manifests
+	 */
+	public static final String MANIFEST_NAME = "HelixAssetManifest";
+
+	private static final String SERVICE_FILE = "META-INF/services/" + AssetManifest.class.getName();
+
+	/**
+	 * Fully qualified names of the manifests generated so far
+	 */
+	private final Set<String> manifests = new TreeSet<>();
+	/**
+	 * Manifests of classes compiled without any annotated fields, which an
+	 * earlier build may have listed
+	 */
+	private final Set<String> removed = new TreeSet<>();
+	private final List<Element> originating = new ArrayList<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			this.writeServiceFile();
+			return false;
+		}
+		if (roundEnv.getRootElements().isEmpty())
+			return false;
+
+		// Manifest name to the fields of its class, in a stable order so builds are reproducible
+		Map<String, List<VariableElement>> classes = new TreeMap<>();
+		for (Element element : roundEnv.getElementsAnnotatedWith(QueueAsset.class)) {
+			if (element.getKind() != ElementKind.FIELD || !this.check((VariableElement) element))
+				continue;
+			String name = this.getManifestName((TypeElement) element.getEnclosingElement());
+			List<VariableElement> fields = classes.get(name);
+			if (fields == null) {
+				fields = new ArrayList<>();
+				classes.put(name, fields);
+			}
+			fields.add((VariableElement) element);
+		}
+
+		for (Element root : roundEnv.getRootElements()) {
+			this.findRemoved(root, classes.keySet());
+		}
+		for (Map.Entry<String, List<VariableElement>> entry : classes.entrySet()) {
+			this.writeManifest(entry.getKey(), entry.getValue());
+		}
+		// Leave the annotations to any other processor as well
+		return false;
+	}
+
+	/**
+	 * @return - qualified name of the manifest generated for a class
+	 */
+	private String getManifestName(TypeElement owner) {
+		String name = MANIFEST_NAME;
+		Element element = owner;
+		for (; element.getKind() != ElementKind.PACKAGE; element = element.getEnclosingElement()) {
+			name = element.getSimpleName() + "_" + name;
+		}
+		String packageName = ((PackageElement) element).getQualifiedName().toString();
+		return packageName.isEmpty() ? name : packageName + "." + name;
+	}
+
+	/**
+	 * Note the manifest names of a class being compiled, and of the classes
+	 * nested in it, that have no annotated fields
+	 */
+	private void findRemoved(Element element, Set<String> generated) {
+		if (!element.getKind().isClass() && !element.getKind().isInterface())
+			return;
+		String name = this.getManifestName((TypeElement) element);
+		if (!generated.contains(name))
+			removed.add(name);
+		for (Element enclosed : element.getEnclosedElements()) {
+			this.findRemoved(enclosed, generated);
+		}
+	}
+
+	/**
+	 * Check that generated code in the field's package can set the field
+	 * @return - whether or not it can
+	 */
+	private boolean check(VariableElement field) {
+		Set<Modifier> modifiers = field.getModifiers();
+		if (!modifiers.contains(Modifier.PUBLIC) || !modifiers.contains(Modifier.STATIC)
+				|| modifiers.contains(Modifier.FINAL))
+			return this.error(field, "@QueueAsset fields must be public, static and not final");
+
+		TypeMirror string = processingEnv.getElementUtils().getTypeElement(String.class.getName()).asType();
+		if (!processingEnv.getTypeUtils().isAssignable(string, field.asType()))
+			return this.error(field, "@QueueAsset fields must be able to hold a String");
+
+		for (Element owner = field.getEnclosingElement(); owner.getKind() != ElementKind.PACKAGE; owner = owner.getEnclosingElement()) {
+			if (owner.getModifiers().contains(Modifier.PRIVATE))
+				return this.error(field, "@QueueAsset fields can't be in a private class");
+		}
+		return true;
+	}
+
+	private boolean error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+		return false;
+	}
+
+	private void writeManifest(String name, List<VariableElement> fields) {
+		String packageName = processingEnv.getElementUtils().getPackageOf(fields.get(0)).getQualifiedName().toString();
+		String simpleName = name.substring(name.lastIndexOf('.') + 1);
+		if (!manifests.add(name)) {
+			// Only happens for fields in classes generated by another processor
+			this.error(fields.get(0), "@QueueAsset fields of " + fields.get(0).getEnclosingElement() + " found in more than one round");
+			return;
+		}
+		removed.remove(name);
+		originating.addAll(fields);
+		Collections.sort(fields, new Comparator<VariableElement>() {
+			@Override
+			public int compare(VariableElement a, VariableElement b) {
+				return getName(a).compareTo(getName(b));
+			}
+		});
+
+		try {
+			JavaFileObject file = processingEnv.getFiler().createSourceFile(name, fields.toArray(new Element[0]));
+			try (Writer out = file.openWriter()) {
+				if (!packageName.isEmpty())
+					out.write("package " + packageName + ";\n\n");
+				out.write("/**\n * Generated by " + QueueAssetProcessor.class.getName() + ", do not edit\n */\n");
+				out.write("public final class " + simpleName + " implements " + AssetManifest.class.getName() + " {\n\n");
+				out.write("\t@Override\n\tpublic String getPackage() {\n");
+				out.write("\t\treturn " + processingEnv.getElementUtils().getConstantExpression(packageName) + ";\n\t}\n\n");
+				out.write("\t@Override\n\tpublic int queue(" + AssetManifest.AssetQueue.class.getCanonicalName()
+						+ " queue) throws io.sly.helix.exception.HelixException {\n");
+				for (VariableElement field : fields) {
+					out.write("\t\t" + this.getName(field) + " = queue.queue(" + this.getRef(field) + ", " + this.getType(field) + ".class);\n");
+				}
+				out.write("\t\treturn " + fields.size() + ";\n\t}\n}\n");
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write " + name + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return - qualified name of a field, as used in source
+	 */
+	private String getName(VariableElement field) {
+		return ((TypeElement) field.getEnclosingElement()).getQualifiedName() + "." + field.getSimpleName();
+	}
+
+	/**
+	 * List every manifest so that a {@link java.util.ServiceLoader} finds them,
+	 * along with those an earlier build listed that are still around
+	 */
+	private void writeServiceFile() {
+		// Classes deleted since can't be told apart from ones that weren't recompiled, Data skips their manifests
+		Set<String> listed = this.readServiceFile();
+		boolean existed = !listed.isEmpty();
+		listed.removeAll(removed);
+		manifests.addAll(listed);
+		if (manifests.isEmpty() && !existed)
+			return;
+		try {
+			FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE,
+					originating.toArray(new Element[0]));
+			try (Writer out = file.openWriter()) {
+				for (String manifest : manifests) {
+					out.write(manifest + "\n");
+				}
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write " + SERVICE_FILE + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return - manifests listed by the service file already in the output,
+	 * empty if there is none
+	 */
+	private Set<String> readServiceFile() {
+		Set<String> listed = new TreeSet<>();
+		try {
+			FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+			try (Reader reader = file.openReader(true); BufferedReader in = new BufferedReader(reader)) {
+				for (String line = in.readLine(); line != null; line = in.readLine()) {
+					int comment = line.indexOf('#');
+					String manifest = (comment >= 0 ? line.substring(0, comment) : line).trim();
+					if (!manifest.isEmpty())
+						listed.add(manifest);
+				}
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			// No earlier build, or nothing readable from it
+		}
+		return listed;
+	}
+
+	/**
+	 * @return - {@link QueueAsset#ref} of a field, as a Java string literal
+	 */
+	private String getRef(VariableElement field) {
+		return processingEnv.getElementUtils().getConstantExpression(this.getValue(field, "ref").getValue());
+	}
+
+	/**
+	 * @return - qualified name of the {@link QueueAsset#type} of a field
+	 */
+	private String getType(VariableElement field) {
+		// Reading the Class from the annotation itself throws, as it isn't compiled yet
+		TypeMirror type = (TypeMirror) this.getValue(field, "type").getValue();
+		return ((TypeElement) processingEnv.getTypeUtils().asElement(type)).getQualifiedName().toString();
+	}
+
+	private AnnotationValue getValue(VariableElement field, String name) {
+		for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+			TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+			if (!annotationType.getQualifiedName().contentEquals(QueueAsset.class.getName()))
+				continue;
+			for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+					: processingEnv.getElementUtils().getElementValuesWithDefaults(annotation).entrySet()) {
+				if (entry.getKey().getSimpleName().contentEquals(name))
+					return entry.getValue();
+			}
+		}
+		throw new IllegalStateException("No " + name + " on @QueueAsset of " + field);
+	}
+}
@@ -114,6 +114,17 @@ public abstract class BaseGame extends Game {
 		this.start();
 	}
 
+	/**
+	 * Run the simulation ticks that are due, then render the current screen
+	 * 
+	 * @see {@link Data#advance}
+	 */
+	@Override
+	public void render() {
+		this.data.advance(Gdx.graphics.getDeltaTime());
+		super.render();
+	}
+
 	public Long getTicks() {
 		return getData().getTicks();
 	}
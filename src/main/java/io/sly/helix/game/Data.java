@@ -2,9 +2,20 @@ package io.sly.helix.game;
 
 import java.io.File;
 import java.lang.reflect.Field;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.logging.Logger;
 
@@ -17,14 +28,24 @@ import com.badlogic.gdx.utils.viewport.Viewport;
 import com.badlogic.gdx.Game;
 
 import io.sly.helix.Constants;
+import io.sly.helix.annotations.AssetManifest;
 import io.sly.helix.annotations.QueueAsset;
+import io.sly.helix.annotations.QueueAssetProcessor;
 import io.sly.helix.exception.HelixException;
 import io.sly.helix.exception.res.ResourceNotFoundException;
+import io.sly.helix.game.alarm.AlarmScheduler;
+import io.sly.helix.game.entities.EntityPool;
 import io.sly.helix.game.entities.GameObject;
+import io.sly.helix.game.entities.HelixEntityManager;
+import io.sly.helix.game.entities.TransformStore;
+import io.sly.helix.game.entities.TypeIndex;
+import io.sly.helix.game.save.AsyncSave;
+import io.sly.helix.game.save.WorldSnapshot;
 import io.sly.helix.gfx.Animation;
 import io.sly.helix.gfx.Screen;
 import io.sly.helix.gfx.Sprite;
 import io.sly.helix.utils.ClassUtils;
+import io.sly.helix.utils.HandleAllocator;
 import io.sly.helix.utils.io.BinaryReader;
 import io.sly.helix.utils.io.BinaryWriter;
 
@@ -47,6 +68,38 @@ public class Data {
 
 	private static Long ticks = 0L;
 
+	/**
+	 * Whether or not {@link Data#update} is running
+	 */
+	private boolean updating;
+
+	/**
+	 * Saves waiting for the end of the tick, and the one whose objects are
+	 * still being captured
+	 */
+	private final ArrayDeque<AsyncSave> pendingSaves = new ArrayDeque<>();
+	private volatile AsyncSave saveInProgress;
+	private ExecutorService saveExecutor;
+
+	/**
+	 * Last {@link GameObject#getSaveKey} handed out
+	 */
+	private final AtomicInteger saveKeys = new AtomicInteger();
+
+	/**
+	 * Simulation ticks per second, 0 for one tick per frame
+	 */
+	private int tickRate = Constants.DEFAULT_TICK_RATE;
+	private int maxCatchUpSteps = Constants.DEFAULT_MAX_CATCH_UP_STEPS;
+	/**
+	 * Real time not yet simulated (seconds)
+	 */
+	private float accumulator;
+	/**
+	 * How far between the last tick and the next one the current frame is
+	 */
+	private float alpha = 1;
+
 
 	private final BaseGame game;
 	
@@ -57,7 +110,30 @@ public class Data {
 	private double loadProgress;
 	private boolean finishedLoading = false;
 
-	private final List<GameObject> globalObjects = new ArrayList<>();
+	/**
+	 * Handles of every live {@link GameObject}
+	 */
+	private final HandleAllocator<GameObject> handles = new HandleAllocator<>();
+
+	/**
+	 * Optional struct-of-arrays store for the position and direction of new objects
+	 */
+	private TransformStore transformStore;
+
+	/**
+	 * Scheduler every {@link GameObject}'s alarms run on. Advanced once per tick
+	 */
+	private final AlarmScheduler alarms = new AlarmScheduler();
+
+	/**
+	 * Pools of recycled objects, by class
+	 */
+	private final Map<Class<?>, EntityPool<?>> pools = new HashMap<>();
+
+	/**
+	 * Objects kept between screens, indexed by type
+	 */
+	private final TypeIndex globalObjects = new TypeIndex();
 	
 	private final List<Screen> screens = new ArrayList<>();
 
@@ -139,17 +215,179 @@ public class Data {
 		return currentScreen.addObject(object);
 	}
 
+	/**
+	 * Remove a {@link GameObject} from the current screen or the global objects
+	 * @param object
+	 * @return true if the object was removed
+	 */
+	public final boolean removeObject(GameObject object) {
+		if(globalObjects.remove(object))
+			return true;
+		return currentScreen.removeObject(object);
+	}
+
+	/**
+	 * Find an instance of some class or interface in the current screen, falling
+	 * back to the global objects
+	 * @param searchClass - Type of class to search for
+	 * @return an instance of searchClass or null if none is found
+	 */
+	public final <T> T find(Class<T> searchClass) {
+		T found = currentScreen.find(searchClass);
+		if(found != null)
+			return found;
+		return globalObjects.find(searchClass);
+	}
+
+	/**
+	 * Look up a {@link GameObject} by its handle
+	 * @param handle - handle from {@link GameObject#getId}
+	 * @return the object, or null if it has since been disposed
+	 */
+	public final GameObject resolve(int handle) {
+		return handles.resolve(handle);
+	}
+
+	/**
+	 * Look up a {@link GameObject} by its handle
+	 * @param handle - handle from {@link GameObject#getId}
+	 * @param type - expected type of the object
+	 * @return the object, or null if it has since been disposed or is not of the given type
+	 */
+	public final <T extends GameObject> T resolve(int handle, Class<T> type) {
+		GameObject object = handles.resolve(handle);
+		return type.isInstance(object) ? type.cast(object) : null;
+	}
+
+	/**
+	 * Get every instance of some class or interface in the current screen
+	 * @param searchClass - Type of class to search for
+	 * @return a live, read-only view of every instance of searchClass
+	 */
+	public final <T> List<T> findAll(Class<T> searchClass) {
+		return currentScreen.findAll(searchClass);
+	}
+
 	
 	/**
-	 * Load all assets into the game
+	 * Get an instance of some class from its {@link EntityPool}, creating one
+	 * if the pool is empty. Destroying the instance through a
+	 * {@link HelixEntityManager} puts it back in the pool
+	 * @param type - class to get an instance of. Must have a (Data, Vector2D) constructor
+	 * @return an instance at (0, 0)
+	 */
+	public final <T extends GameObject> T obtain(Class<T> type) {
+		return this.obtain(type, 0, 0);
+	}
+
+	/**
+	 * Get an instance of some class from its {@link EntityPool}, creating one
+	 * if the pool is empty
+	 * @param type - class to get an instance of. Must have a (Data, Vector2D) constructor
+	 * @param x - x position to place the instance at
+	 * @param y - y position to place the instance at
+	 * @return an instance at (x, y)
+	 * 
+	 * @see {@link Data#obtain(Class)}
+	 */
+	public final <T extends GameObject> T obtain(Class<T> type, float x, float y) {
+		return this.getPool(type).obtain(x, y);
+	}
+
+	/**
+	 * Get the {@link EntityPool} of some class, creating it if needed
+	 * @param type - class being pooled
+	 * @return the pool, which also exposes its hit and miss counters
+	 */
+	@SuppressWarnings("unchecked")
+	public final synchronized <T extends GameObject> EntityPool<T> getPool(Class<T> type) {
+		EntityPool<T> pool = (EntityPool<T>) pools.get(type);
+		if(pool == null) {
+			pool = new EntityPool<>(this, type);
+			pools.put(type, pool);
+		}
+		return pool;
+	}
+
+	/**
+	 * Queue every {@link QueueAsset} field's asset to load, and set each field
+	 * to its ref
+	 * <br><br>
+	 * Uses the {@link AssetManifest}s generated at compile time for the root
+	 * package and the packages under it. Only if there are none, for instance
+	 * when the game was compiled without the annotation processor, scans every
+	 * class of the root package for the annotation instead, which is much slower
+	 *
+	 * @see {@link QueueAssetProcessor}
 	 */
 	public void queueAllTextures() throws HelixException {
-		// Queue Resources
+		long start = System.nanoTime();
+		String source = "asset manifests";
+		int queued = this.queueFromManifests();
+		if (queued < 0) {
+			log.warn("No asset manifest found for " + rootPackage + ", scanning its classes instead");
+			source = "a class scan";
+			queued = this.queueFromScan();
+		}
+		log.info("Queued " + queued + " assets from " + source + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+
+	/**
+	 * Queue the assets of the manifests in the root package
+	 * @return - number of assets queued, -1 if there are no manifests for the root package
+	 */
+	private int queueFromManifests() throws HelixException {
+		AssetManifest.AssetQueue queue = new AssetManifest.AssetQueue() {
+			@Override
+			public String queue(String ref, Class<?> type) throws HelixException {
+				return queueAsset(ref, type);
+			}
+		};
+
+		List<AssetManifest> manifests = new ArrayList<>();
+		Iterator<AssetManifest> found = ServiceLoader.load(AssetManifest.class).iterator();
+		while (true) {
+			try {
+				if (!found.hasNext())
+					break;
+			} catch (ServiceConfigurationError e) {
+				log.error("Failed to load asset manifests: " + e.getMessage());
+				break;
+			}
+			try {
+				AssetManifest manifest = found.next();
+				String packageName = manifest.getPackage();
+				if (rootPackage.isEmpty() || packageName.equals(rootPackage) || packageName.startsWith(rootPackage + "."))
+					manifests.add(manifest);
+			} catch (ServiceConfigurationError | LinkageError e) {
+				// Still listed after an incremental build, for a class that has been deleted since
+				log.warn("Skipping asset manifest: " + e.getMessage());
+			}
+		}
+		if (manifests.isEmpty())
+			return -1;
+
+		int queued = 0;
+		for (AssetManifest manifest : manifests) {
+			try {
+				queued += manifest.queue(queue);
+			} catch (LinkageError e) {
+				log.warn("Skipping asset manifest " + manifest.getClass().getName() + ": " + e);
+			}
+		}
+		return queued;
+	}
+
+	/**
+	 * Queue the assets of every annotated field found by scanning the root package
+	 * @return - number of assets queued
+	 */
+	private int queueFromScan() throws HelixException {
 		Set<Class<?>> classes = ClassUtils.getClasses(rootPackage);
 		QueueAsset queueAnnotation;
 		Object fieldObject;
-		File targetFile;
-		
+		int queued = 0;
+
 		for (Class<?> clazz : classes) {
 			for (Field texField : clazz.getFields()) {
 				
@@ -157,26 +395,39 @@ public class Data {
 					continue;
 				
 				queueAnnotation = texField.getAnnotation(QueueAsset.class);
+				String ref = this.queueAsset(queueAnnotation.ref(), queueAnnotation.type());
+				queued++;
 
-				targetFile = new File(ABS_PATH + queueAnnotation.ref());
-				if(!targetFile.exists() || targetFile.isDirectory()) {
-					if(targetFile.isDirectory()) {
-						log.error("Target File is directory: " + queueAnnotation.ref());
-					}
-					throw new ResourceNotFoundException(ABS_PATH + queueAnnotation.ref());
-				}
-				
 				// Attempt to set the texture field to the new value
 				try {
 					fieldObject = texField.get(clazz); // clazz = Mage.class
-					texField.set(fieldObject, queueAnnotation.ref());
+					texField.set(fieldObject, ref);
 				} catch (IllegalArgumentException | IllegalAccessException e) {
 					e.printStackTrace();
 				}
+			}
+		}
+		return queued;
+	}
 
-				this.getManager().load(queueAnnotation.ref(), queueAnnotation.type());
+	/**
+	 * Queue an asset to load
+	 * @param ref - path of the asset, relative to the absolute path
+	 * @param type - type to load the asset as
+	 * @return - value to set the asset's field to
+	 * @throws ResourceNotFoundException if there is no file at the path
+	 */
+	private String queueAsset(String ref, Class<?> type) throws HelixException {
+		File targetFile = new File(ABS_PATH + ref);
+		if(!targetFile.exists() || targetFile.isDirectory()) {
+			if(targetFile.isDirectory()) {
+				log.error("Target File is directory: " + ref);
 			}
+			throw new ResourceNotFoundException(ABS_PATH + ref);
 		}
+
+		this.getManager().load(ref, type);
+		return ref;
 	}
 
 	public boolean loadNextAsset() {
@@ -216,36 +467,66 @@ public class Data {
 	};
 
 	/**
-	 * Main update loop. Dispose of all entities that need disposing and then sort
-	 * entities by {@link HelixEntity#getDepth} Finally, update all objects and then run
-	 * {@link Data#step}
+	 * Run as many ticks as a frame calls for. With no tick rate set, runs a
+	 * single tick with the frame delta. Otherwise the frame delta is added to
+	 * an accumulator and fixed ticks are run until it is used up, up to
+	 * {@link Data#getMaxCatchUpSteps} of them. Time that could not be caught up
+	 * on is dropped so a slow frame does not make the next one slower
 	 * 
-	 * @param delta - Time since last frame (seconds)
+	 * @param frameDelta - Time since last frame (seconds)
+	 * @return - number of ticks run
+	 * 
+	 * @see {@link Data#setTickRate}, {@link Data#getAlpha}
 	 */
-	public final void update(float delta) {
-		ticks++;
+	public final int advance(float frameDelta) {
+		if (tickRate <= 0) {
+			this.update(frameDelta);
+			alpha = 1;
+			return 1;
+		}
 
-		// this.disposeCore();
+		float tickDelta = this.getTickDelta();
+		accumulator += frameDelta;
 
-		// entities.sort(new Comparator<Entity>() {
+		int steps = 0;
+		while (accumulator >= tickDelta && steps < maxCatchUpSteps) {
+			this.update(tickDelta);
+			accumulator -= tickDelta;
+			steps++;
+		}
 
-		// 	public int compare(Entity e1, Entity e2) {
-		// 		return (int) Math.signum(e2.getDepth() - e1.getDepth());
-		// 	}
+		if (accumulator >= tickDelta) {
+			log.debug("Dropped " + (int) (accumulator / tickDelta) + " ticks to catch up");
+			accumulator %= tickDelta;
+		}
 
-		// });
+		alpha = accumulator / tickDelta;
+		return steps;
+	}
 
-		// if (this.objectBuffer.size() > 0) {
-		// 	this.objects.addAll(objectBuffer);
-		// 	this.objectBuffer.clear();
-		// }
+	/**
+	 * Main update loop. Advance the tick counter, fire any alarms that are
+	 * due, run the step event of the current screen and then run {@link Data#step}. Entities are depth sorted
+	 * by {@link HelixEntityManager#render}
+	 * 
+	 * @param delta - Length of the tick (seconds)
+	 * 
+	 * @see {@link Data#advance}
+	 */
+	public final void update(float delta) {
+		updating = true;
+		try {
+			ticks++;
+			alarms.advance(delta);
 
-		// for (GameObject object : objects) {
-		// 	object.updateAlarms(delta);
-		// 	object.update(delta);
-		// }
+			if (currentScreen != null)
+				currentScreen.update(delta);
 
-		this.step(delta);
+			this.step(delta);
+		} finally {
+			updating = false;
+		}
+		this.startPendingSave();
 	}
 
 	/**
@@ -297,6 +578,7 @@ public class Data {
 	public final void stopReading() {
 		if (reader == null)
 			return;
+		reader.close();
 		reader = null;
 	}
 
@@ -325,6 +607,100 @@ public class Data {
 		writer.close();
 		writer = null;
 	}
+
+	/**
+	 * Save the objects of the current screen and the global objects
+	 * @param path - path to save to, relative to the absolute directory
+	 * @return - number of objects saved
+	 *
+	 * @see {@link WorldSnapshot}
+	 */
+	public final int saveSnapshot(String path) {
+		return WorldSnapshot.save(this, currentScreen, path);
+	}
+
+	/**
+	 * Load objects saved by {@link Data#saveSnapshot} into the current screen
+	 * and the global objects
+	 * @param path - path to load from, relative to the absolute directory
+	 * @return - the snapshot loaded
+	 *
+	 * @see {@link WorldSnapshot}
+	 */
+	public final WorldSnapshot loadSnapshot(String path) {
+		return WorldSnapshot.load(this, currentScreen, path);
+	}
+
+	/**
+	 * Save the objects of the current screen and the global objects without
+	 * stopping the game. The objects are captured at the end of the current
+	 * tick (straight away if called between ticks) and written to the file on
+	 * a background thread. Call from the game thread. {@link AsyncSave} lists
+	 * how many objects fit in a 1 ms frame budget
+	 * @param path - path to save to, relative to the absolute directory
+	 * @return - completes with the number of objects saved once the file is written
+	 *
+	 * @see {@link AsyncSave}
+	 */
+	public final CompletableFuture<Integer> saveAsync(String path) {
+		AsyncSave save = new AsyncSave(path);
+		pendingSaves.add(save);
+		if (!updating)
+			this.startPendingSave();
+		return save.getResult();
+	}
+
+	/**
+	 * Capture the next pending save, once the last one has finished capturing
+	 */
+	private void startPendingSave() {
+		if (saveInProgress != null) {
+			if (saveInProgress.isCapturing())
+				return;
+			saveInProgress = null;
+		}
+		if (pendingSaves.isEmpty())
+			return;
+
+		AsyncSave save = pendingSaves.poll();
+		save.capture(this, currentScreen);
+		saveInProgress = save;
+		this.getSaveExecutor().execute(save);
+	}
+
+	/**
+	 * @return - a new key to identify an object between saves
+	 *
+	 * @see {@link GameObject#getSaveKey}
+	 */
+	public int nextSaveKey() {
+		return saveKeys.incrementAndGet();
+	}
+
+	/**
+	 * Make sure a key read from a save is never handed out to another object
+	 * @param key - key in use
+	 */
+	public void reserveSaveKey(int key) {
+		int last;
+		do {
+			last = saveKeys.get();
+		} while (last < key && !saveKeys.compareAndSet(last, key));
+	}
+
+	private synchronized ExecutorService getSaveExecutor() {
+		if (saveExecutor == null) {
+			saveExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "helix-save");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return saveExecutor;
+	}
 	
 	// =============================== Getters and Setters =============================
 
@@ -333,6 +709,23 @@ public class Data {
 		return manager;
 	}
 
+	public HandleAllocator<GameObject> getHandles() {
+		return handles;
+	}
+
+	public TransformStore getTransformStore() {
+		return transformStore;
+	}
+
+	/**
+	 * Set the store that {@link GameObject}s created from now on keep their
+	 * position and direction in. Objects that already exist are not moved
+	 * @param transformStore - store to use, null to keep them on the heap
+	 */
+	public void setTransformStore(TransformStore transformStore) {
+		this.transformStore = transformStore;
+	}
+
 	public List<Screen> getScreens() {
 		return screens;
 	}
@@ -341,8 +734,11 @@ public class Data {
 		return currentScreen.getObjects();
 	}
 
+	/**
+	 * @return a live, read-only view of every global object
+	 */
 	public List<GameObject> getGlobalObjects() {
-		return globalObjects;
+		return globalObjects.findAll(GameObject.class);
 	}
 	
 	public Camera getCurrentCamera() {
@@ -414,6 +810,70 @@ public class Data {
 		return ticks;
 	}
 
+	/**
+	 * @return - the background save whose objects are being captured, if any
+	 *
+	 * @see {@link GameObject#beforeChange}
+	 */
+	public AsyncSave getSaveInProgress() {
+		return saveInProgress;
+	}
+
+	/**
+	 * @return - scheduler that alarms are set on
+	 */
+	public AlarmScheduler getAlarms() {
+		return alarms;
+	}
+
+	public int getTickRate() {
+		return tickRate;
+	}
+
+	/**
+	 * Set how many simulation ticks to run per second, independent of the
+	 * frame rate. Ticks are then always given the same delta
+	 * 
+	 * @param tickRate - ticks per second (Hz), 0 for one tick per frame
+	 */
+	public void setTickRate(int tickRate) {
+		this.tickRate = Math.max(tickRate, 0);
+		this.accumulator = 0;
+	}
+
+	/**
+	 * @return - length of a tick (seconds), 0 with no tick rate set
+	 */
+	public float getTickDelta() {
+		return tickRate > 0 ? 1f / tickRate : 0;
+	}
+
+	public int getMaxCatchUpSteps() {
+		return maxCatchUpSteps;
+	}
+
+	/**
+	 * Set the most ticks to run in one frame when simulation falls behind
+	 * 
+	 * @param maxCatchUpSteps
+	 */
+	public void setMaxCatchUpSteps(int maxCatchUpSteps) {
+		this.maxCatchUpSteps = Math.max(maxCatchUpSteps, 1);
+	}
+
+	/**
+	 * Get how far the current frame is between the last tick and the next one.
+	 * Render positions interpolated by this to keep motion smooth when ticks
+	 * run slower than frames
+	 * 
+	 * @return - 0 (at the last tick) to 1 (at the next tick). Always 1 with no tick rate set
+	 * 
+	 * @see {@link GameObject#getInterpolatedX}
+	 */
+	public float getAlpha() {
+		return alpha;
+	}
+
 	public boolean hasFinishedLoading() {
 		return finishedLoading;
 	}
@@ -1,10 +1,15 @@
 package io.sly.helix.game.alarm;
 
+import io.sly.helix.game.entities.GameObject;
+
 /**
- * Timer that triggers a callback method after a set amount of time (seconds)
+ * Timer that triggers a callback method after a set amount of time (seconds).
+ * Alarms are scheduled on an {@link AlarmScheduler}, so an alarm costs nothing
+ * until it fires. Alarms made without a scheduler get their own, which is
+ * advanced through {@link Alarm#update}
  * @author Sly
- * 
- * @see {@link Event}
+ *
+ * @see {@link Event}, {@link AlarmScheduler}
  */
 public final class Alarm {
 	/**
@@ -17,115 +22,196 @@ public final class Alarm {
 	public static final int NO_ALARM = -1;
 
 	/**
-	 * Event Callback to be triggered when the alarm timer is 0
+	 * Scheduler the alarm is set on
 	 */
-	private Event action;
+	private final AlarmScheduler scheduler;
 	/**
-	 * Timer of the alarm. Decremented by 1 every tick
+	 * Whether or not {@link Alarm#scheduler} belongs to this alarm alone, and
+	 * is advanced by {@link Alarm#update}
 	 */
-	private int timer = NO_ALARM;
+	private final boolean ownsScheduler;
 	/**
-	 * Time that alarm was initially set
+	 * Object the alarm belongs to, if any. Its {@link GameObject#beforeChange}
+	 * runs before the alarm's event, as the event usually changes it
 	 */
-	private int startTime;
-	
+	private final GameObject owner;
+
 	/**
-	 * Synchronization variable
+	 * Event Callback to be triggered when the alarm goes off
 	 */
-	private float ms = 0;
-	
+	private Event action;
 	/**
-	 * Create a new blank alarm
+	 * Scheduled callback, null while the alarm is not set
+	 */
+	private AlarmHandle handle;
+	/**
+	 * Time that alarm was initially set (seconds)
+	 */
+	private float startTime;
+
+	/**
+	 * Create a new blank alarm with its own scheduler
 	 */
 	public Alarm() {
-		this.action = null;
+		this(new AlarmScheduler(), true, null);
+	}
+
+	/**
+	 * Create a new blank alarm on a shared scheduler
+	 * @param scheduler - scheduler to set the alarm on
+	 */
+	public Alarm(AlarmScheduler scheduler) {
+		this(scheduler, null);
 	}
 
 	/**
-	 * Create a new alarm with a set {@link Alarm#action} and {@link Alarm#timer}
+	 * Create a new blank alarm of a {@link GameObject} on a shared scheduler
+	 * @param scheduler - scheduler to set the alarm on
+	 * @param owner - object to let a background save capture before the alarm goes off
+	 *
+	 * @see {@link GameObject#beforeChange}
+	 */
+	public Alarm(AlarmScheduler scheduler, GameObject owner) {
+		this(scheduler, false, owner);
+	}
+
+	/**
+	 * Create a new alarm with its own scheduler and a set {@link Alarm#action} and timer
 	 * @param action - Callback method to trigger when timer reaches 0
 	 * @param timer - timer (seconds)
 	 */
 	public Alarm(Event action, int timer) {
-		this.action = action;
-		this.setTimer(timer);
+		this();
+		this.setAlarm(timer, action);
 	}
-	
+
+	private Alarm(AlarmScheduler scheduler, boolean ownsScheduler, GameObject owner) {
+		this.scheduler = scheduler;
+		this.ownsScheduler = ownsScheduler;
+		this.owner = owner;
+	}
+
 	/**
-	 * Update the alarm
+	 * Update the alarm. Only needed for alarms that have their own scheduler,
+	 * shared schedulers are advanced by whoever owns them
 	 * @param delta - time since last frame (in seconds)
 	 */
 	public void update(float delta) {
-		if(ms >= 1000f) {
-			if(timer > 0) {
-				timer--;
-			}
-			if (timer == 0) {
-				action.event();
-				timer = NO_ALARM;
-			}
-			ms = 0;
-		} else ms += 1000f * delta;
+		if (ownsScheduler)
+			scheduler.advance(delta);
 	}
 
 	public void cancel() {
-		this.timer = -1;
+		if (handle != null)
+			handle.cancel();
+		this.handle = null;
 		this.action = null;
 	}
-	
+
 	/**
 	 * @return - return percent complete of the timer (0 < x < 1)
 	 */
 	public float percent() {
 		if(isActive() && startTime != 0)
-			return (1f - ((float)timer / (float)startTime));
+			return (1f - (handle.getRemaining() / startTime));
 		else return 0f;
 	}
-	
+
 	/**
-	 * Set the {@link Alarm#action} and {@link Alarm#timer} of the alarm
+	 * Set the {@link Alarm#action} and timer of the alarm
 	 * @param action - Callback method to trigger when timer reaches 0
 	 * @param timer - timer (seconds)
 	 */
 	public void setAlarm(int timer, Event action) {
+		this.setAlarm((float) timer, action);
+	}
+
+	/**
+	 * Set the {@link Alarm#action} and timer of the alarm, replacing whatever
+	 * it was set to before
+	 * @param action - Callback method to trigger when the time is up
+	 * @param seconds - time until the alarm goes off (seconds)
+	 */
+	public void setAlarm(float seconds, Event action) {
+		this.cancel();
 		this.action = action;
-		this.setTimer(timer);
-		System.out.println("Timer: " + timer + ": " + (action != null));
+		this.startTime = seconds;
+		this.handle = scheduler.schedule(seconds, this::fire);
 	}
-	
+
 	/**
-	 * Set the {@link Alarm#timer} of the alarm
+	 * Set the alarm to go off repeatedly until it is cancelled
+	 * @param period - time between each time the alarm goes off (seconds)
+	 * @param action - Callback method to trigger each time
+	 */
+	public void setRepeating(float period, Event action) {
+		this.cancel();
+		this.action = action;
+		this.startTime = period;
+		this.handle = scheduler.scheduleRepeating(period, period, this::fire);
+	}
+
+	/**
+	 * Set the timer of the alarm, keeping its {@link Alarm#action}
 	 * @param timer - time in seconds
 	 */
 	public void setTimer(int timer) {
-		this.timer = timer;
-		this.startTime = timer;
+		this.setAlarm(timer, action);
+	}
+
+	private void fire() {
+		Event action = this.action;
+		if (!handle.isRepeating())
+			handle = null;
+		if (action == null)
+			return;
+		// Alarms fire before any object is updated, so this is the first change the owner sees this tick
+		if (owner != null)
+			owner.beforeChange();
+		action.event();
 	}
-	
+
 	/**
 	 * Get time remaining on the alarm
-	 * @return - time in seconds
+	 * @return - time in whole seconds, rounded up, or {@link Alarm#NO_ALARM} if not set
 	 */
 	public int getTimer() {
-		return timer;
+		if (!isActive())
+			return NO_ALARM;
+		return (int) Math.ceil(handle.getRemaining());
 	}
-	
+
+	/**
+	 * Get time remaining on the alarm
+	 * @return - time in seconds, 0 if not set
+	 */
+	public float getRemaining() {
+		return isActive() ? handle.getRemaining() : 0;
+	}
+
 	public int getStartTime() {
-		return this.startTime;
+		return (int) this.startTime;
+	}
+
+	/**
+	 * @return - handle of the scheduled callback, null if the alarm is not set
+	 */
+	public AlarmHandle getHandle() {
+		return handle;
 	}
-	
-	/** <b>strictly</b> when {@link Alarm#timer} == {@link Alarm#NO_ALARM}
+
+	/**
 	 * @return - whether or not alarm is currently ticking down
 	 */
 	public boolean isActive() {
-		return (timer != NO_ALARM);
+		return handle != null && handle.isPending();
 	}
-	
+
 	public String toString() {
-		return "Alarm [timer=" + this.getTimer() + 
+		return "Alarm [timer=" + this.getRemaining() +
 				".init_timer=" + this.startTime +
 				",event=" + this.action
 				+ "]";
 	}
-	
+
 }
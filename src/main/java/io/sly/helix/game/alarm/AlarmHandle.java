@@ -0,0 +1,83 @@
+package io.sly.helix.game.alarm;
+
+/**
+ * Handle to an event scheduled on an {@link AlarmScheduler}. Can be used to
+ * cancel the event or see how long is left until it fires
+ *
+ * @author Sly
+ *
+ * @see {@link AlarmScheduler#schedule}
+ */
+public final class AlarmHandle {
+
+	final AlarmScheduler scheduler;
+	final Event action;
+
+	/**
+	 * Tick the event is due on
+	 */
+	long deadline;
+	/**
+	 * Ticks between repeats, 0 if the event only fires once
+	 */
+	final long period;
+
+	/**
+	 * Position in the wheel. Level is -1 once the handle is no longer scheduled
+	 */
+	int level = -1, slot;
+	AlarmHandle prev, next;
+
+	AlarmHandle(AlarmScheduler scheduler, Event action, long deadline, long period) {
+		this.scheduler = scheduler;
+		this.action = action;
+		this.deadline = deadline;
+		this.period = period;
+	}
+
+	/**
+	 * Stop the event from firing again. Does nothing if it already fired or was
+	 * cancelled
+	 */
+	public void cancel() {
+		scheduler.cancel(this);
+	}
+
+	/**
+	 * @return - whether or not the event is still waiting to fire
+	 */
+	public boolean isPending() {
+		return level != -1;
+	}
+
+	/**
+	 * @return - whether or not the event fires again after each time it fires
+	 */
+	public boolean isRepeating() {
+		return period > 0;
+	}
+
+	/**
+	 * @return - time until the event next fires (seconds), 0 if it is not pending
+	 */
+	public float getRemaining() {
+		if (!isPending())
+			return 0;
+		return scheduler.secondsUntil(deadline);
+	}
+
+	/**
+	 * @return - time between repeats (seconds), 0 if the event only fires once
+	 */
+	public float getPeriod() {
+		return period * AlarmScheduler.TICK_SECONDS;
+	}
+
+	@Override
+	public String toString() {
+		return "AlarmHandle [remaining=" + this.getRemaining()
+				+ ",period=" + this.getPeriod()
+				+ ",pending=" + this.isPending()
+				+ "]";
+	}
+}
@@ -0,0 +1,285 @@
+package io.sly.helix.game.alarm;
+
+/**
+ * Hierarchical timing wheel that fires {@link Event}s after a delay. Time is
+ * counted in ticks of {@link AlarmScheduler#TICK_SECONDS}. Each level of the
+ * wheel has {@link AlarmScheduler#SLOTS} slots, each covering 64 times as many
+ * ticks as a slot of the level below it. Events start in the level matching
+ * how far off they are and move down a level each time the slot they are in
+ * comes around, so scheduling, cancelling and firing an event are all O(1),
+ * and advancing time only visits slots that have events in them
+ * <br><br>
+ * Events due on the same tick fire in the order they were scheduled
+ *
+ * @author Sly
+ *
+ * @see {@link io.sly.helix.game.Data#getAlarms}, {@link AlarmHandle}
+ */
+public final class AlarmScheduler {
+
+	/**
+	 * Length of a tick (seconds)
+	 */
+	public static final float TICK_SECONDS = 0.001f;
+	/**
+	 * Number of slots in each level of the wheel
+	 */
+	public static final int SLOTS = 64;
+	/**
+	 * Number of levels in the wheel. Events further off than the wheel spans
+	 * (about 4.6 hours) wait in the top level until they come into range
+	 */
+	public static final int LEVELS = 4;
+
+	private static final int SLOT_BITS = 6;
+	private static final int SLOT_MASK = SLOTS - 1;
+	private static final double TICKS_PER_SECOND = 1000d;
+
+	/**
+	 * Level of a handle that has been taken off the wheel to be fired or moved
+	 */
+	static final int DETACHED = -2;
+
+	private final AlarmHandle[][] heads = new AlarmHandle[LEVELS][SLOTS];
+	private final AlarmHandle[][] tails = new AlarmHandle[LEVELS][SLOTS];
+	/**
+	 * One bit per slot of each level, set when the slot has events in it
+	 */
+	private final long[] occupied = new long[LEVELS];
+
+	/**
+	 * Last tick processed
+	 */
+	private long now;
+	/**
+	 * Time advanced so far (seconds)
+	 */
+	private double elapsed;
+	private int size;
+
+	/**
+	 * Schedule an event to fire once
+	 *
+	 * @param delay  - time until the event fires (seconds)
+	 * @param action - event to fire
+	 * @return - a handle to cancel the event with
+	 */
+	public synchronized AlarmHandle schedule(float delay, Event action) {
+		return this.schedule(delay, 0, action);
+	}
+
+	/**
+	 * Schedule an event to fire repeatedly until it is cancelled
+	 *
+	 * @param delay  - time until the event first fires (seconds)
+	 * @param period - time between each time the event fires (seconds)
+	 * @param action - event to fire
+	 * @return - a handle to cancel the event with
+	 */
+	public synchronized AlarmHandle scheduleRepeating(float delay, float period, Event action) {
+		return this.schedule(delay, Math.max(toTicks(period), 1), action);
+	}
+
+	private AlarmHandle schedule(float delay, long period, Event action) {
+		// Never schedule onto the tick being processed, it has already been taken off the wheel
+		AlarmHandle handle = new AlarmHandle(this, action, now + Math.max(toTicks(delay), 1), period);
+		this.insert(handle);
+		size++;
+		return handle;
+	}
+
+	/**
+	 * Cancel an event. Does nothing if it already fired or was cancelled
+	 *
+	 * @param handle - handle of the event
+	 */
+	public synchronized void cancel(AlarmHandle handle) {
+		if (handle == null || handle.scheduler != this || !handle.isPending())
+			return;
+		if (handle.level == DETACHED)
+			// Still linked to the slot being fired, which skips it from here on
+			handle.level = -1;
+		else
+			this.unlink(handle);
+		size--;
+	}
+
+	/**
+	 * Advance time, firing every event that comes due in order
+	 *
+	 * @param delta - time to advance by (seconds)
+	 */
+	public synchronized void advance(float delta) {
+		elapsed += delta;
+		long target = (long) (elapsed * TICKS_PER_SECOND);
+
+		while (now < target) {
+			if (size == 0) {
+				now = target;
+				return;
+			}
+
+			long next = this.nextTick();
+			if (next > target) {
+				now = target;
+				return;
+			}
+
+			now = next;
+			if ((now & SLOT_MASK) == 0)
+				this.cascade();
+			this.fire(0, (int) (now & SLOT_MASK));
+		}
+	}
+
+	/**
+	 * Find the next tick that either has events due in the bottom level or
+	 * starts a new lap of it, when events from higher levels move down
+	 */
+	private long nextTick() {
+		int current = (int) (now & SLOT_MASK);
+		long later = current == SLOT_MASK ? 0 : occupied[0] & (-1L << (current + 1));
+		if (later != 0)
+			return (now & ~SLOT_MASK) + Long.numberOfTrailingZeros(later);
+		return (now | SLOT_MASK) + 1;
+	}
+
+	/**
+	 * Move the events in the slots that have just come around down a level.
+	 * Called at the start of every lap of the bottom level
+	 */
+	private void cascade() {
+		int levels = 1;
+		while (levels < LEVELS && ((now >>> (SLOT_BITS * levels)) & SLOT_MASK) == 0)
+			levels++;
+
+		// Highest level first, so events can fall more than one level at once
+		for (int level = Math.min(levels, LEVELS - 1); level >= 1; level--) {
+			int slot = (int) ((now >>> (SLOT_BITS * level)) & SLOT_MASK);
+			AlarmHandle handle = this.detach(level, slot);
+			while (handle != null) {
+				AlarmHandle next = handle.next;
+				this.insert(handle);
+				handle = next;
+			}
+		}
+	}
+
+	/**
+	 * Fire every event in a slot that is due, putting anything else back
+	 */
+	private void fire(int level, int slot) {
+		AlarmHandle handle = this.detach(level, slot);
+		while (handle != null) {
+			AlarmHandle next = handle.next;
+			handle.next = null;
+			if (handle.level != DETACHED) {
+				// Cancelled by an event fired earlier in this slot
+			} else if (handle.deadline > now) {
+				this.insert(handle);
+			} else if (handle.period > 0) {
+				handle.deadline += handle.period;
+				this.insert(handle);
+				handle.action.event();
+			} else {
+				handle.level = -1;
+				size--;
+				handle.action.event();
+			}
+			handle = next;
+		}
+	}
+
+	/**
+	 * Put a handle in the slot of the level matching how far off it is
+	 */
+	private void insert(AlarmHandle handle) {
+		long delta = Math.max(handle.deadline - now, 0);
+		int level = 0;
+		while (level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1))))
+			level++;
+
+		long key;
+		if (delta >= (1L << (SLOT_BITS * LEVELS)))
+			// Out of range, wait in the furthest slot of the top level and try again from there
+			key = (now >>> (SLOT_BITS * level)) - 1;
+		else
+			key = handle.deadline >>> (SLOT_BITS * level);
+
+		int slot = (int) (key & SLOT_MASK);
+		handle.level = level;
+		handle.slot = slot;
+		handle.next = null;
+		handle.prev = tails[level][slot];
+		if (handle.prev == null)
+			heads[level][slot] = handle;
+		else
+			handle.prev.next = handle;
+		tails[level][slot] = handle;
+		occupied[level] |= 1L << slot;
+	}
+
+	private void unlink(AlarmHandle handle) {
+		int level = handle.level, slot = handle.slot;
+		if (handle.prev == null)
+			heads[level][slot] = handle.next;
+		else
+			handle.prev.next = handle.next;
+		if (handle.next == null)
+			tails[level][slot] = handle.prev;
+		else
+			handle.next.prev = handle.prev;
+
+		if (heads[level][slot] == null)
+			occupied[level] &= ~(1L << slot);
+		handle.prev = handle.next = null;
+		handle.level = -1;
+	}
+
+	/**
+	 * Take every handle out of a slot
+	 *
+	 * @return - the first handle, linked to the rest through {@link AlarmHandle#next}
+	 */
+	private AlarmHandle detach(int level, int slot) {
+		AlarmHandle head = heads[level][slot];
+		heads[level][slot] = null;
+		tails[level][slot] = null;
+		occupied[level] &= ~(1L << slot);
+
+		for (AlarmHandle handle = head; handle != null; handle = handle.next) {
+			handle.level = DETACHED;
+			handle.prev = null;
+		}
+		return head;
+	}
+
+	float secondsUntil(long deadline) {
+		return (deadline - now) * TICK_SECONDS;
+	}
+
+	private static long toTicks(float seconds) {
+		return Math.round(seconds * TICKS_PER_SECOND);
+	}
+
+	// Getters and Setters
+
+	/**
+	 * @return - time advanced so far (seconds)
+	 */
+	public double getTime() {
+		return elapsed;
+	}
+
+	/**
+	 * @return - number of events waiting to fire
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "AlarmScheduler [time=" + this.elapsed + ",pending=" + this.size + "]";
+	}
+}
@@ -0,0 +1,252 @@
+package io.sly.helix.game.entities;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.sly.helix.game.alarm.Event;
+
+/**
+ * Mutations recorded during a parallel update of a {@link HelixEntityManager}.
+ * Each chunk of entities gets its own buffer, and buffers are applied in chunk
+ * order once every chunk has been updated, so the result does not depend on
+ * which worker ran which chunk or when
+ * <br><br>
+ * Writes that would race are recorded: moving, turning or changing the speed
+ * of any object other than the one being updated, spawning, disposing, alarms,
+ * and adding to or removing from a {@link TypeIndex} or {@link SpatialHashGrid}.
+ * The object being updated changes its own position, direction and speed
+ * straight away, while other workers read the copy taken when the phase began
+ *
+ * @author Sly
+ *
+ * @see {@link HelixEntityManager#setParallel}
+ */
+final class CommandBuffer {
+
+	private static final byte ADD = 0;
+	private static final byte DESTROY = 1;
+	private static final byte SET_POS = 2;
+	private static final byte ADD_POS = 3;
+	private static final byte SET_DIRECTION = 4;
+	private static final byte FREE = 5;
+	private static final byte SET_ALARM = 6;
+	private static final byte SET_REPEATING_ALARM = 7;
+	private static final byte REGISTER = 8;
+	private static final byte DISPOSE = 9;
+	private static final byte INDEX_ADD = 10;
+	private static final byte INDEX_REMOVE = 11;
+	private static final byte GRID_INSERT = 12;
+	private static final byte GRID_REMOVE = 13;
+	private static final byte SET_SPEED = 14;
+
+	/**
+	 * Number of parallel phases currently running. Lets serial code skip the
+	 * thread-local lookup entirely
+	 */
+	private static final AtomicInteger activePhases = new AtomicInteger();
+
+	/**
+	 * Buffer of the chunk being updated by the current thread
+	 */
+	private static final ThreadLocal<CommandBuffer> current = new ThreadLocal<>();
+
+	/**
+	 * Object the bound thread is updating, which may change its own transform directly
+	 */
+	GameObject owner;
+
+	private byte[] ops = new byte[16];
+	private Object[] targets = new Object[16];
+	private Object[] args = new Object[16];
+	private float[] xs = new float[16];
+	private float[] ys = new float[16];
+	private int size;
+
+	/**
+	 * Get the buffer of the chunk the calling thread is updating
+	 *
+	 * @return - the buffer, or null outside of a parallel update phase
+	 */
+	static CommandBuffer current() {
+		if (activePhases.get() == 0)
+			return null;
+		return current.get();
+	}
+
+	static void beginPhase() {
+		activePhases.incrementAndGet();
+	}
+
+	static void endPhase() {
+		activePhases.decrementAndGet();
+	}
+
+	/**
+	 * Make this the buffer of the calling thread
+	 *
+	 * @return - buffer the thread had before, to hand back to {@link CommandBuffer#unbind}
+	 */
+	CommandBuffer bind() {
+		CommandBuffer outer = current.get();
+		current.set(this);
+		return outer;
+	}
+
+	/**
+	 * Give the calling thread back the buffer it had before {@link CommandBuffer#bind}
+	 */
+	void unbind(CommandBuffer outer) {
+		if (outer == null)
+			current.remove();
+		else
+			current.set(outer);
+	}
+
+	void add(HelixEntityManager manager, HelixEntity entity) {
+		this.push(ADD, manager, entity, 0, 0);
+	}
+
+	void destroy(HelixEntityManager manager, HelixEntity entity) {
+		this.push(DESTROY, manager, entity, 0, 0);
+	}
+
+	void free(HelixEntityManager manager, HelixEntity entity) {
+		this.push(FREE, manager, entity, 0, 0);
+	}
+
+	/**
+	 * Defer setting one of an object's alarms
+	 */
+	void setAlarm(GameObject object, int index, float seconds, Event action, boolean repeating) {
+		this.push(repeating ? SET_REPEATING_ALARM : SET_ALARM, object, action, index, seconds);
+	}
+
+	void setPos(GameObject object, float x, float y) {
+		this.push(SET_POS, object, null, x, y);
+	}
+
+	void addPos(GameObject object, float x, float y) {
+		this.push(ADD_POS, object, null, x, y);
+	}
+
+	void setDirection(GameObject object, float x, float y) {
+		this.push(SET_DIRECTION, object, null, x, y);
+	}
+
+	void setSpeed(GameObject object, float speed) {
+		this.push(SET_SPEED, object, null, speed, 0);
+	}
+
+	/**
+	 * Defer giving an object created during the phase its handle and
+	 * {@link TransformStore} slot, so they are handed out in the same order
+	 * however the phase was split
+	 */
+	void register(GameObject object) {
+		this.push(REGISTER, object, null, 0, 0);
+	}
+
+	void dispose(GameObject object) {
+		this.push(DISPOSE, object, null, 0, 0);
+	}
+
+	void add(TypeIndex index, GameObject object) {
+		this.push(INDEX_ADD, index, object, 0, 0);
+	}
+
+	void remove(TypeIndex index, GameObject object) {
+		this.push(INDEX_REMOVE, index, object, 0, 0);
+	}
+
+	void insert(SpatialHashGrid grid, GameObject object) {
+		this.push(GRID_INSERT, grid, object, 0, 0);
+	}
+
+	void remove(SpatialHashGrid grid, GameObject object) {
+		this.push(GRID_REMOVE, grid, object, 0, 0);
+	}
+
+	/**
+	 * Apply every recorded command in the order it was recorded, then clear the buffer
+	 */
+	void apply() {
+		for (int i = 0; i < size; i++) {
+			// Let a background save capture the object before it changes
+			if (ops[i] != ADD && ops[i] != DESTROY && ops[i] != FREE && targets[i] instanceof GameObject)
+				((GameObject) targets[i]).beforeChange();
+
+			switch (ops[i]) {
+				case ADD:
+					((HelixEntityManager) targets[i]).add((HelixEntity) args[i]);
+					break;
+				case DESTROY:
+					((HelixEntityManager) targets[i]).destroy((HelixEntity) args[i]);
+					break;
+				case FREE:
+					((HelixEntityManager) targets[i]).free((HelixEntity) args[i]);
+					break;
+				case SET_ALARM:
+					((GameObject) targets[i]).setAlarm((int) xs[i], ys[i], (Event) args[i]);
+					break;
+				case SET_REPEATING_ALARM:
+					((GameObject) targets[i]).setRepeatingAlarm((int) xs[i], ys[i], (Event) args[i]);
+					break;
+				case SET_POS:
+					((GameObject) targets[i]).setPos(xs[i], ys[i]);
+					break;
+				case ADD_POS:
+					((GameObject) targets[i]).addPos(xs[i], ys[i]);
+					break;
+				case SET_DIRECTION:
+					((GameObject) targets[i]).setDirection(xs[i], ys[i]);
+					break;
+				case SET_SPEED:
+					((GameObject) targets[i]).setSpeed(xs[i]);
+					break;
+				case REGISTER:
+					((GameObject) targets[i]).register();
+					break;
+				case DISPOSE:
+					((GameObject) targets[i]).dispose();
+					break;
+				case INDEX_ADD:
+					((TypeIndex) targets[i]).add((GameObject) args[i]);
+					break;
+				case INDEX_REMOVE:
+					((TypeIndex) targets[i]).remove((GameObject) args[i]);
+					break;
+				case GRID_INSERT:
+					((SpatialHashGrid) targets[i]).insert((GameObject) args[i]);
+					break;
+				case GRID_REMOVE:
+					((SpatialHashGrid) targets[i]).remove((GameObject) args[i]);
+					break;
+			}
+		}
+		this.clear();
+	}
+
+	void clear() {
+		owner = null;
+		Arrays.fill(targets, 0, size, null);
+		Arrays.fill(args, 0, size, null);
+		size = 0;
+	}
+
+	private void push(byte op, Object target, Object arg, float x, float y) {
+		if (size == ops.length) {
+			int capacity = size * 2;
+			ops = Arrays.copyOf(ops, capacity);
+			targets = Arrays.copyOf(targets, capacity);
+			args = Arrays.copyOf(args, capacity);
+			xs = Arrays.copyOf(xs, capacity);
+			ys = Arrays.copyOf(ys, capacity);
+		}
+		ops[size] = op;
+		targets[size] = target;
+		args[size] = arg;
+		xs[size] = x;
+		ys[size] = y;
+		size++;
+	}
+}
@@ -0,0 +1,198 @@
+package io.sly.helix.game.entities;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+import com.badlogic.gdx.utils.Array;
+
+import io.sly.helix.Constants;
+import io.sly.helix.exception.HelixRuntimeException;
+import io.sly.helix.game.Data;
+import io.sly.helix.utils.math.Vector2D;
+
+/**
+ * Pool of recycled instances of a single {@link GameObject} class. Instances
+ * are created through the class's <code>(Data, Vector2D)</code> constructor
+ * when the pool is empty, and handed back out after being reset once they are
+ * freed
+ *
+ * @author Sly
+ *
+ * @param <T> - type of object pooled
+ *
+ * @see {@link Data#obtain}, {@link HelixEntityManager#free}, {@link GameObject#reset}
+ */
+public final class EntityPool<T extends GameObject> {
+
+	/**
+	 * Default maximum number of free instances kept
+	 */
+	public static final int DEFAULT_MAX_FREE = 4096;
+
+	private final Data data;
+	private final Class<T> type;
+	private final Constructor<T> constructor;
+
+	private final Array<T> free;
+	private int maxFree;
+
+	private long hits, misses, frees, discarded;
+
+	/**
+	 * @param data - data to create instances with
+	 * @param type - type of object pooled
+	 * @throws HelixRuntimeException if type has no <code>(Data, Vector2D)</code> constructor
+	 */
+	public EntityPool(Data data, Class<T> type) {
+		this.data = data;
+		this.type = type;
+		this.maxFree = DEFAULT_MAX_FREE;
+		this.free = new Array<>(false, 16, type);
+
+		try {
+			this.constructor = type.getDeclaredConstructor(Data.class, Vector2D.class);
+			this.constructor.setAccessible(true);
+		} catch (NoSuchMethodException | SecurityException e) {
+			throw new HelixRuntimeException(Constants.ERR_POOL,
+					"Cannot pool " + type.getName() + ": no (Data, Vector2D) constructor", e);
+		}
+	}
+
+	/**
+	 * Take an instance out of the pool, creating one if the pool is empty.
+	 * During a parallel update, which free instance each caller gets depends
+	 * on timing, so {@link GameObject#reset} must clear anything that would
+	 * tell them apart
+	 *
+	 * @param x - x position to place the instance at
+	 * @param y - y position to place the instance at
+	 * @return - a ready to use instance
+	 */
+	public synchronized T obtain(float x, float y) {
+		T object;
+		if (free.size > 0) {
+			hits++;
+			object = free.pop();
+			object.revive(x, y);
+		} else {
+			misses++;
+			object = this.create(x, y);
+		}
+
+		object.pool = this;
+		object.pooled = false;
+		return object;
+	}
+
+	/**
+	 * Reset an instance and put it back in the pool. The instance must already
+	 * be disposed and removed from anything that holds on to it. Freeing an
+	 * instance that is already in the pool does nothing
+	 *
+	 * @param object - instance to free
+	 */
+	public synchronized void free(T object) {
+		if (object == null || object.pooled)
+			return;
+
+		frees++;
+		object.resetState();
+
+		if (free.size >= maxFree) {
+			discarded++;
+			object.pool = null;
+			return;
+		}
+		object.pooled = true;
+		object.pool = this;
+		free.add(object);
+	}
+
+	/**
+	 * Type checked {@link EntityPool#free}
+	 */
+	void freeObject(GameObject object) {
+		this.free(type.cast(object));
+	}
+
+	/**
+	 * Drop every free instance
+	 */
+	public synchronized void clear() {
+		for (int i = 0; i < free.size; i++) {
+			free.get(i).pool = null;
+			free.get(i).pooled = false;
+		}
+		free.clear();
+	}
+
+	private T create(float x, float y) {
+		try {
+			return constructor.newInstance(data, new Vector2D(x, y));
+		} catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+			throw new HelixRuntimeException(Constants.ERR_POOL, "Failed to create " + type.getName(), e);
+		}
+	}
+
+	// Getters and Setters
+
+	public Class<T> getType() {
+		return type;
+	}
+
+	/**
+	 * @return - number of obtains served from the pool
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return - number of obtains that had to create a new instance
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return - number of instances freed
+	 */
+	public long getFrees() {
+		return frees;
+	}
+
+	/**
+	 * @return - number of freed instances dropped because the pool was full
+	 */
+	public long getDiscarded() {
+		return discarded;
+	}
+
+	/**
+	 * @return - number of instances waiting in the pool
+	 */
+	public int getFreeCount() {
+		return free.size;
+	}
+
+	public int getMaxFree() {
+		return maxFree;
+	}
+
+	/**
+	 * @param maxFree - most free instances to keep. Extra freed instances are left to the GC
+	 */
+	public void setMaxFree(int maxFree) {
+		this.maxFree = maxFree;
+	}
+
+	@Override
+	public String toString() {
+		return "EntityPool [type=" + type.getSimpleName()
+				+ ",free=" + free.size
+				+ ",hits=" + hits
+				+ ",misses=" + misses
+				+ ",frees=" + frees
+				+ "]";
+	}
+}
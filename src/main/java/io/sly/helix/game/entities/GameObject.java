@@ -1,13 +1,17 @@
 package io.sly.helix.game.entities;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 
+import com.badlogic.gdx.math.Rectangle;
+
 import io.sly.helix.Constants;
 import io.sly.helix.game.Data;
 import io.sly.helix.game.alarm.Alarm;
 import io.sly.helix.game.alarm.Event;
+import io.sly.helix.game.save.AsyncSave;
+import io.sly.helix.game.save.SaveChain;
+import io.sly.helix.utils.HandleAllocator;
 import io.sly.helix.utils.math.Vector2D;
 
 /**
@@ -23,34 +27,104 @@ public abstract class GameObject {
 	public static final Logger log = Logger.getLogger(GameObject.class.getCanonicalName());
 
 	/**
-	 * Next ID to be assigned
+	 * ID of the object. A generational handle that {@link Data#resolve} maps
+	 * back to this object until it is disposed
+	 * 
+	 * @see {@link HandleAllocator}
 	 */
-	private static Long ID_NEXT = 0L;
-	private static final List<Long> freeIds = new ArrayList<>();
+	private int id;
+
 	/**
-	 * ID of the object
+	 * Alarms to be used for timed events. Created the first time they are used
 	 */
-	public final Long id;
+	private Alarm[] alarm;
+	/**
+	 * Position of the object. A view over {@link GameObject#transforms} when
+	 * the object has a slot in one
+	 */
+	private final Vector2D pos;
 
 	/**
-	 * Alarms to be used for timed events
+	 * Direction the object travels in. A view over
+	 * {@link GameObject#transforms} when the object has a slot in one
 	 */
-	private Alarm[] alarm;
+	private final Vector2D direction;
+
+	/**
+	 * Speed the object moves at along {@link GameObject#direction} when its
+	 * {@link TransformStore} integrates movement (px/second). Kept in the store
+	 * while the object has a slot in one
+	 */
+	private float speed;
+
+	/**
+	 * Whether its {@link TransformStore} moves the object. False while a
+	 * {@link HelixEntity} is inactive
+	 */
+	private boolean moving = true;
+
+	/**
+	 * Store holding the position, direction and speed of the object. Null if
+	 * the object keeps them on the heap
+	 */
+	private TransformStore transforms;
+
+	/**
+	 * Position at the start of the last update, used to interpolate rendering
+	 */
+	private float prevX, prevY;
+
+	/**
+	 * Position, direction and speed as of the start of a parallel update, which
+	 * every object but this one reads while it runs. Created the first time
+	 * the object is updated in parallel
+	 *
+	 * @see {@link HelixEntityManager#setParallel}
+	 */
+	private Vector2D sharedPos, sharedDirection;
+	private float sharedSpeed;
+	/**
+	 * Whether a parallel update is running with the shared copies published,
+	 * and whether the object moved itself during it
+	 */
+	private boolean published, moved;
+
+	/**
+	 * Pool this object goes back to once it is destroyed, and whether it is
+	 * currently sitting in that pool
+	 */
+	EntityPool<?> pool;
+	boolean pooled;
+
 	/**
-	 * Position of the object
+	 * Whether or not the object has changed since it was last saved
+	 *
+	 * @see {@link SaveChain}
 	 */
-	private Vector2D pos;
+	private boolean dirty = true;
 
 	/**
-	 * Direction the object travels in
+	 * Key identifying the object between saves, 0 until it is first saved
 	 */
-	private Vector2D direction;
+	private int saveKey;
 
 	/**
 	 * Data of the application
 	 */
 	private final Data data;
 
+	/**
+	 * Head of the chain of {@link SpatialHashGrid}s this object is bucketed in
+	 */
+	SpatialHashGrid.Entry gridEntries;
+
+	/**
+	 * {@link TypeIndex} this object is registered in, and its slot in each of
+	 * that index's buckets
+	 */
+	TypeIndex typeIndex;
+	int[] typeSlots;
+
 	/**
 	 * To be overridden as necessary. Ran before {@link GameObject#step}
 	 * 
@@ -82,101 +156,255 @@ public abstract class GameObject {
 	}
 
 	/**
-	 * Create a new GameObject
+	 * Create a new GameObject. Objects created during a parallel update of a
+	 * {@link HelixEntityManager} only get their handle once the update is
+	 * over, {@link GameObject#getId} is 0 until then
 	 * 
 	 * @param data - All the Game Data
 	 * @param pos  - {@link Vector2D} to spawn the Object at
 	 */
 	public GameObject(Data data, Vector2D pos) {
-		if(freeIds.size() == 0) {
-			this.id = ID_NEXT++;
+		this.data = data;
+
+		TransformStore store = data.getTransformStore();
+		if (store != null) {
+			// Hold the values until the object is given a slot
+			this.pos = new TransformStore.View(store, -1, false);
+			this.pos.set(pos);
+			this.direction = new TransformStore.View(store, -1, true);
 		} else {
-			this.id = freeIds.get(0);
-			freeIds.remove(0);
+			this.pos = pos;
+			this.direction = new Vector2D(0, 0);
 		}
-		this.pos = pos;
-		this.data = data;
-		this.direction = new Vector2D(0, 0);
-		this.initAlarms();
+		this.snapInterpolation();
+		this.register();
+	}
+
+	/**
+	 * Give the object a handle, and a slot in the {@link TransformStore} if it
+	 * was created with one. During a parallel update this is deferred until
+	 * the end of the phase
+	 */
+	final void register() {
+		CommandBuffer buffer = CommandBuffer.current();
+		if (buffer != null) {
+			buffer.register(this);
+			return;
+		}
+
+		this.id = data.getHandles().allocate(this);
+		TransformStore store = data.getTransformStore();
+		if (store != null && pos instanceof TransformStore.View) {
+			this.transforms = store;
+			store.attach(this, (TransformStore.View) pos, (TransformStore.View) direction, speed, moving);
+		}
+	}
+
+	/**
+	 * Override as necessary. Called when the object is freed back into an
+	 * {@link EntityPool}, after its handle, alarms and direction have been
+	 * cleared. Reset any state here that should not carry over to the next
+	 * time the object is obtained
+	 * 
+	 * @see {@link Data#obtain}, {@link HelixEntityManager#free}
+	 */
+	protected void reset() {
 	}
 
 	/**
-	 * Initialize each alarm
+	 * Clear engine state before going back into a pool, then run {@link GameObject#reset}
+	 */
+	void resetState() {
+		this.beforeChange();
+		this.cancelAlarms();
+		this.direction.set(0, 0);
+		this.speed = 0;
+		this.moving = true;
+		this.saveKey = 0;
+		this.reset();
+	}
+
+	/**
+	 * Bring a pooled object back to life with a new handle at some position
 	 * 
-	 * @see {@link Alarm}, {@link Alarm#ALARM_COUNT}
+	 * @param x - x position
+	 * @param y - y position
 	 */
-	private void initAlarms() {
-		alarm = new Alarm[Alarm.ALARM_COUNT];
-		for (int i = 0; i < Alarm.ALARM_COUNT; i++) {
-			alarm[i] = new Alarm();
+	final void revive(float x, float y) {
+		// Detached from any store since it was freed, so this is not shared yet
+		this.pos.set(x, y);
+		this.direction.set(0, 0);
+		this.speed = 0;
+		this.dirty = true;
+		this.snapInterpolation();
+		this.register();
+	}
+
+	/**
+	 * Copy the position, direction and speed other objects read during a
+	 * parallel update, before it begins
+	 */
+	final void publish() {
+		if (sharedPos == null) {
+			sharedPos = new Vector2D(0, 0);
+			sharedDirection = new Vector2D(0, 0);
+		}
+		sharedPos.set(pos);
+		sharedDirection.set(direction);
+		sharedSpeed = this.getSpeed();
+		published = true;
+	}
+
+	/**
+	 * Go back to reading the live position once a parallel update is over,
+	 * and re-bucket the object if it moved itself during it
+	 */
+	final void unpublish() {
+		published = false;
+		if (moved) {
+			moved = false;
+			this.positionChanged();
+		}
+	}
+
+	/**
+	 * @return - the buffer to defer a change to this object into, or null to
+	 * change it now. Only objects other than the one being updated are
+	 * deferred, and only during a parallel update
+	 */
+	private CommandBuffer deferTo() {
+		CommandBuffer buffer = CommandBuffer.current();
+		return buffer != null && buffer.owner != this ? buffer : null;
+	}
+
+	/**
+	 * Cancel every alarm that has been used
+	 */
+	private void cancelAlarms() {
+		if (alarm == null)
+			return;
+		for (Alarm a : alarm) {
+			if (a != null)
+				a.cancel();
 		}
 	}
 
+	/**
+	 * Let a save that is being written in the background capture this object
+	 * before it changes. Called before the object is updated, moved, turned,
+	 * disposed or reset, and before one of its alarms goes off. Call it before
+	 * changing this object's fields from outside its own update
+	 * 
+	 * @see {@link AsyncSave}
+	 */
+	public final void beforeChange() {
+		AsyncSave save = data.getSaveInProgress();
+		if (save != null)
+			save.beforeChange(this);
+	}
+
 	/**
 	 * Update the game object
 	 * 
 	 * @param delta - Time since last frame (seconds)
 	 */
 	public final void update(float delta) {
-		updateAlarms(delta);
+		this.beforeChange();
+		this.snapInterpolation();
 		preStep(delta);
 		step(delta);
 		postStep(delta);
 	}
 
 	/**
-	 * Update the alarms
+	 * Make the current position the one rendering interpolates from. Call this
+	 * after teleporting an object so it is not drawn sliding across the screen
+	 */
+	public final void snapInterpolation() {
+		this.prevX = pos.getX();
+		this.prevY = pos.getY();
+	}
+
+	/**
+	 * Get the x position to render at
 	 * 
-	 * @param delta - Time since last frame (seconds)
+	 * @param alpha - how far between the last tick and the next one the frame is
+	 * @return - x position between where the object started its last update and where it is now
+	 * 
+	 * @see {@link Data#getAlpha}
 	 */
-	private final void updateAlarms(float delta) {
-		for (Alarm alarm : alarm) {
-			alarm.update(delta);
-		}
+	public final float getInterpolatedX(float alpha) {
+		return prevX + (pos.getX() - prevX) * alpha;
 	}
 
-	@SuppressWarnings("unchecked")
-	// TODO: Optimize this
 	/**
-	 * Find the first instance of some {@link GameObject}
+	 * Get the y position to render at
+	 * 
+	 * @param alpha - how far between the last tick and the next one the frame is
+	 * @return - y position between where the object started its last update and where it is now
+	 * 
+	 * @see {@link Data#getAlpha}
+	 */
+	public final float getInterpolatedY(float alpha) {
+		return prevY + (pos.getY() - prevY) * alpha;
+	}
+
+	/**
+	 * Find an instance of some {@link GameObject}
 	 * 
 	 * @param searchClass - Type of class to search for
-	 * @return - the first instance of searchClass or null if none is found
+	 * @return - an instance of searchClass or null if none is found
+	 * 
+	 * @see {@link Data#find}
 	 */
 	public final <T extends GameObject> T find(Class<T> searchClass) {
-		for (GameObject object : data.getCurrentObjects()) {
-			if (searchClass.isInstance(object))
-				return (T) object;
-		}
-		return null;
+		return data.find(searchClass);
+	}
+
+	/**
+	 * Get every instance of some class or interface in the current screen
+	 * 
+	 * @param searchClass - Type of class to search for
+	 * @return - a live, read-only view of every instance of searchClass
+	 * 
+	 * @see {@link Data#findAll}
+	 */
+	public final <T> List<T> findAll(Class<T> searchClass) {
+		return data.findAll(searchClass);
 	}
 
-	@SuppressWarnings("unchecked")
 	/**
-	 * Find the first instance of some {@link GameObject}
+	 * Find the nearest instance of some {@link GameObject}, other than this one,
+	 * through the current screen's {@link SpatialHashGrid}
 	 * 
 	 * @param searchClass - Type of class to search for
 	 * @return - the nearest instance of searchClass or null if none is found
 	 */
 	public final <T extends GameObject> T findNearest(Class<T> searchClass) {
-		GameObject current = null;
-		for (GameObject object : data.getCurrentObjects()) {
-			if (!searchClass.isInstance(object))
-				continue;
-			if (current == null) {
-				current = object;
-				continue;
-			}
-
-			float dis1 = this.getPos().getDistTo(object.getPos());
-			float dis2 = this.getPos().getDistTo(current.getPos());
-			if (dis1 < dis2)
-				current = object;
-		}
-		if (current != null)
-			return (T) current;
-		else
-			return null;
+		return data.getCurrentScreen().getGrid().findNearest(getPos().getX(), getPos().getY(), searchClass, this);
+	}
+
+	/**
+	 * Find every {@link GameObject} in the current screen within some distance
+	 * of a point
+	 * 
+	 * @param center - centre of the search
+	 * @param radius - search radius (px)
+	 * @return - a new list of the objects found
+	 */
+	public final List<GameObject> queryRadius(Vector2D center, float radius) {
+		return data.getCurrentScreen().queryRadius(center, radius);
+	}
+
+	/**
+	 * Find every {@link GameObject} in the current screen positioned inside a
+	 * rectangle
+	 * 
+	 * @param rect - area to search
+	 * @return - a new list of the objects found
+	 */
+	public final List<GameObject> queryRect(Rectangle rect) {
+		return data.getCurrentScreen().queryRect(rect);
 	}
 
 	/**
@@ -186,34 +414,65 @@ public abstract class GameObject {
 	 * @return distance (float)
 	 */
 	public final float distTo(GameObject other) {
-		return this.getPos().sub(other.getPos()).length();
+		return this.getPos().getDistTo(other.getPos());
 	}
 
 	/**
-	 * Move towards {@link GameObject#direction} at a given speed
+	 * Move towards {@link GameObject#direction} at a given speed. With a fixed
+	 * tick rate set on {@link Data} this moves the same distance every tick
+	 * 
+	 * @param speed (px/tick)
 	 * 
-	 * @param speed (px/frame)
+	 * @see {@link GameObject#move(float, float)}
 	 */
 	public final void move(float speed) {
-		this.setPos(getPos().add(direction.multiply(speed)));
+		this.addPos(this.getDirection().getX() * speed, this.getDirection().getY() * speed);
+	}
+
+	/**
+	 * Move towards {@link GameObject#direction} for some amount of time
+	 * 
+	 * @param speed - Speed to move at (px/second)
+	 * @param delta - Time to move for (seconds)
+	 */
+	public final void move(float speed, float delta) {
+		this.move(speed * delta);
 	}
 
 	/**
 	 * Move towards a {@link Vector2D} at a given speed
 	 * 
 	 * @param Vector2D - Vector2D to move towards
-	 * @param speed - Speed to move at (px/frame)
+	 * @param speed - Speed to move at (px/tick)
 	 */
 	public final void moveTo(Vector2D Vector2D, float speed) {
-		this.direction = Vector2D.sub(this.getPos()).getUnitVector();
-		this.move(speed);
+		this.moveTo(Vector2D.getX(), Vector2D.getY(), speed);
+	}
+
+	/**
+	 * Move towards a point at a given speed
+	 * 
+	 * @param x     - x position to move towards
+	 * @param y     - y position to move towards
+	 * @param speed - Speed to move at (px/tick)
+	 */
+	public final void moveTo(float x, float y, float speed) {
+		float dx = x - this.getPos().getX(), dy = y - this.getPos().getY();
+		float length = (float) Math.sqrt(dx * dx + dy * dy);
+		if (length != 0) {
+			dx /= length;
+			dy /= length;
+		}
+		// Worked out here rather than read back, as turning another object during a parallel update is deferred
+		this.setDirection(dx, dy);
+		this.addPos(dx * speed, dy * speed);
 	}
 
 	/**
 	 * Move towards a {@link GameObject} at a given speed
 	 * 
 	 * @param target - Target to move towards
-	 * @param speed  - Speed to move at (px/frame)
+	 * @param speed  - Speed to move at (px/tick)
 	 */
 	public final void moveTo(GameObject target, float speed) {
 		this.moveTo(target.getPos(), speed);
@@ -237,30 +496,150 @@ public abstract class GameObject {
 		this.moveTo(target, Constants.DEFAULT_SPEED);
 	}
 
+	/**
+	 * Re-bucket this object in every {@link SpatialHashGrid} it belongs to
+	 */
+	final void positionChanged() {
+		this.dirty = true;
+		for (SpatialHashGrid.Entry entry = gridEntries; entry != null; entry = entry.next) {
+			entry.grid.update(entry);
+		}
+	}
+
 	// Getters and Setters
+
+	/**
+	 * Position of the object. Changes made directly to the returned
+	 * {@link Vector2D} are not seen by the {@link SpatialHashGrid}, use
+	 * {@link GameObject#setPos} instead. During a parallel update, only this
+	 * object's own update sees where it is now, the others get a copy of where
+	 * it was when the update began
+	 * 
+	 * @see {@link HelixEntityManager#setParallel}
+	 */
 	public Vector2D getPos() {
-		return pos;
+		return published && this.deferTo() != null ? sharedPos : pos;
 	}
 
+	/**
+	 * Set the position of the object. During a parallel update, setting the
+	 * position of any object other than the one being updated is deferred
+	 * until the end of the update
+	 * 
+	 * @see {@link HelixEntityManager#setParallel}
+	 */
 	public final void setPos(Vector2D other) {
-		this.pos = other.copy();
+		this.setPos(other.getX(), other.getY());
 	}
 
+	/**
+	 * @see {@link GameObject#setPos(Vector2D)}
+	 */
 	public final void setPos(float x, float y) {
-		this.pos.setX(x);
-		this.pos.setY(y);
+		CommandBuffer buffer = this.deferTo();
+		if (buffer != null) {
+			buffer.setPos(this, x, y);
+			return;
+		}
+
+		this.beforeChange();
+		this.pos.set(x, y);
+		if (published) {
+			// The grids are shared, so the object is re-bucketed once the update is over
+			this.dirty = true;
+			this.moved = true;
+		} else {
+			this.positionChanged();
+		}
 	}
 
+	/**
+	 * @see {@link GameObject#setPos(Vector2D)}
+	 */
 	public final void addPos(float x, float y) {
+		CommandBuffer buffer = this.deferTo();
+		if (buffer != null) {
+			buffer.addPos(this, x, y);
+			return;
+		}
+
 		this.setPos(this.getPos().getX() + x, this.getPos().getY() + y);
 	}
 
+	/**
+	 * Direction of the object. A copy as of the start of a parallel update,
+	 * like {@link GameObject#getPos}
+	 */
 	public final Vector2D getDirection() {
-		return direction;
+		return published && this.deferTo() != null ? sharedDirection : direction;
 	}
 
+	/**
+	 * Set the direction of the object. Copies the values of dir. Deferred
+	 * during a parallel update, like {@link GameObject#setPos(Vector2D)}
+	 */
 	public final void setDirection(Vector2D dir) {
-		this.direction = dir;
+		this.setDirection(dir.getX(), dir.getY());
+	}
+
+	/**
+	 * @see {@link GameObject#setDirection(Vector2D)}
+	 */
+	public final void setDirection(float x, float y) {
+		CommandBuffer buffer = this.deferTo();
+		if (buffer != null) {
+			buffer.setDirection(this, x, y);
+			return;
+		}
+
+		this.beforeChange();
+		this.direction.set(x, y);
+		this.dirty = true;
+	}
+
+	/**
+	 * @return - speed the object moves at along its direction when its
+	 * {@link TransformStore} integrates movement (px/second)
+	 *
+	 * @see {@link TransformStore#integrateMovement}
+	 */
+	public final float getSpeed() {
+		if (published && this.deferTo() != null)
+			return sharedSpeed;
+		return transforms != null ? transforms.getSpeed((TransformStore.View) pos) : speed;
+	}
+
+	/**
+	 * Set the speed the object moves at along its direction when its
+	 * {@link TransformStore} integrates movement. Deferred during a parallel
+	 * update, like {@link GameObject#setPos(Vector2D)}. Not part of the
+	 * position and direction a save writes, so {@link io.sly.helix.utils.io.Serializable}
+	 * objects that rely on it should write it themselves
+	 *
+	 * @param speed - speed (px/second)
+	 */
+	public final void setSpeed(float speed) {
+		CommandBuffer buffer = this.deferTo();
+		if (buffer != null) {
+			buffer.setSpeed(this, speed);
+			return;
+		}
+
+		this.beforeChange();
+		if (transforms != null)
+			transforms.setSpeed((TransformStore.View) pos, speed);
+		else
+			this.speed = speed;
+		this.dirty = true;
+	}
+
+	/**
+	 * Tell the {@link TransformStore} whether to keep moving the object
+	 */
+	final void setMoving(boolean moving) {
+		this.moving = moving;
+		if (transforms != null)
+			transforms.setMoving((TransformStore.View) pos, moving);
 	}
 
 	public String toString() {
@@ -268,21 +647,155 @@ public abstract class GameObject {
 	}
 
 	/**
-	 * Free up global variables such as IDs here
+	 * Free up global variables such as IDs here, and remove the object from
+	 * any {@link TypeIndex} and {@link SpatialHashGrid} it is in. During a
+	 * parallel update this is deferred until the end of the phase, as it
+	 * changes structures other objects share, even for the object being updated
 	 */
 	public final void dispose() {
-		freeIds.add(this.id);
+		CommandBuffer buffer = CommandBuffer.current();
+		if (buffer != null) {
+			buffer.dispose(this);
+			return;
+		}
+
+		this.beforeChange();
+		data.getHandles().free(this.id);
+		this.cancelAlarms();
+
+		if (transforms != null) {
+			this.speed = transforms.getSpeed((TransformStore.View) pos);
+			transforms.free((TransformStore.View) pos);
+			transforms = null;
+		}
+
+		if (typeIndex != null)
+			typeIndex.remove(this);
+		while (gridEntries != null)
+			gridEntries.grid.remove(this);
 	}
 	
 	public final Data getData() {
 		return data;
 	}
 
+	/**
+	 * @return the handle of this object
+	 * 
+	 * @see {@link Data#resolve}
+	 */
+	public final int getId() {
+		return id;
+	}
+
+	/**
+	 * Get one of the object's alarms, which run on the {@link Data#getAlarms} scheduler
+	 * 
+	 * @param index - 0 to {@link Alarm#ALARM_COUNT} - 1
+	 * @return - the alarm
+	 */
 	public final Alarm getAlarm(int index) {
+		if (alarm == null)
+			alarm = new Alarm[Alarm.ALARM_COUNT];
+		if (alarm[index] == null)
+			alarm[index] = new Alarm(data.getAlarms(), this);
 		return alarm[index];
 	}
 
+	/**
+	 * Set one of the object's alarms
+	 * 
+	 * @param index  - index of the alarm
+	 * @param timer  - time until the alarm goes off (seconds)
+	 * @param action - callback to trigger
+	 */
 	public final void setAlarm(int index, int timer, Event action) {
-		this.getAlarm(index).setAlarm(timer, action);
+		this.setAlarm(index, (float) timer, action);
+	}
+
+	/**
+	 * Set one of the object's alarms. During a parallel update this is
+	 * deferred until the end of the phase
+	 * 
+	 * @param index   - index of the alarm
+	 * @param seconds - time until the alarm goes off (seconds)
+	 * @param action  - callback to trigger
+	 * 
+	 * @see {@link HelixEntityManager#setParallel}
+	 */
+	public final void setAlarm(int index, float seconds, Event action) {
+		CommandBuffer buffer = CommandBuffer.current();
+		if (buffer != null) {
+			buffer.setAlarm(this, index, seconds, action, false);
+			return;
+		}
+		this.getAlarm(index).setAlarm(seconds, action);
+		this.dirty = true;
+	}
+
+	/**
+	 * Set one of the object's alarms to go off repeatedly until it is
+	 * cancelled. During a parallel update this is deferred until the end of the phase
+	 * 
+	 * @param index  - index of the alarm
+	 * @param period - time between each time the alarm goes off (seconds)
+	 * @param action - callback to trigger
+	 */
+	public final void setRepeatingAlarm(int index, float period, Event action) {
+		CommandBuffer buffer = CommandBuffer.current();
+		if (buffer != null) {
+			buffer.setAlarm(this, index, period, action, true);
+			return;
+		}
+		this.getAlarm(index).setRepeating(period, action);
+		this.dirty = true;
+	}
+
+	/**
+	 * Mark the object as changed, so the next incremental save writes it.
+	 * Position, direction, alarm and sprite changes do this already; call it
+	 * when changing any other state the object saves
+	 * 
+	 * @see {@link SaveChain}
+	 */
+	public final void markDirty() {
+		this.dirty = true;
+	}
+
+	/**
+	 * @return - whether or not the object has changed since it was last saved
+	 */
+	public final boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Mark the object as saved
+	 */
+	public final void clearDirty() {
+		this.dirty = false;
+	}
+
+	/**
+	 * Get the key identifying this object between saves, giving it one if it
+	 * does not have one yet. Unlike {@link GameObject#getId}, the key is
+	 * kept when the object is saved and loaded again
+	 * 
+	 * @return - the save key, never 0
+	 */
+	public final int getSaveKey() {
+		if (saveKey == 0)
+			saveKey = data.nextSaveKey();
+		return saveKey;
+	}
+
+	/**
+	 * Give the object the key it was saved with
+	 * 
+	 * @param saveKey - key read from a save
+	 */
+	public final void setSaveKey(int saveKey) {
+		this.saveKey = saveKey;
+		data.reserveSaveKey(saveKey);
 	}
 }
@@ -3,6 +3,7 @@ package io.sly.helix.game.entities;
 import java.util.HashMap;
 
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.math.Rectangle;
 
 import io.sly.helix.game.Data;
 import io.sly.helix.game.entities.collider.Collider;
@@ -22,6 +23,8 @@ public abstract class HelixEntity extends GameObject {
 	/**
 	 * Depth to render entity at (less depth means entity is rendered more towards
 	 * background)
+	 * 
+	 * @see {@link HelixEntityManager#DEPTH_ORDER}
 	 */
 	private float depth;
 
@@ -44,6 +47,21 @@ public abstract class HelixEntity extends GameObject {
 	 */
 	private boolean isActive = true;
 
+	/**
+	 * Index of this entity in its {@link HelixEntityManager}, -1 if unmanaged
+	 */
+	int managerIndex = -1;
+	/**
+	 * Whether this entity has been destroyed and is waiting to be removed from
+	 * its {@link HelixEntityManager}
+	 */
+	boolean pendingRemoval;
+	/**
+	 * When this entity was added to its {@link HelixEntityManager}, which
+	 * decides the draw order of entities at the same depth
+	 */
+	long addOrder;
+
 	/**
 	 * Create a basic Entity
 	 * 
@@ -58,24 +76,67 @@ public abstract class HelixEntity extends GameObject {
 		this.collider = new Collider(this);
 	}
 
+	@Override
+	void resetState() {
+		this.isActive = true;
+		this.depth = 0;
+		super.resetState();
+	}
+
 	@Override
 	protected void preStep(float delta) {
 		this.updateDepth();
 	}
 
 	/**
-	 * Render the Current sprite and run the abstract draw event after that
+	 * Render the Current sprite at the entity's position and run the abstract
+	 * draw event after that
+	 * 
+	 * @param batch - SpriteBatch to draw the entity with
+	 * @deprecated {@link HelixEntityManager} renders through
+	 * {@link HelixEntity#render(SpriteBatch, float)}, so overriding this would
+	 * have no effect. Final so that such overrides fail to compile; override
+	 * {@link HelixEntity#render(SpriteBatch, float)} or {@link HelixEntity#draw} instead
+	 */
+	@Deprecated
+	public final void render(SpriteBatch batch) {
+		this.render(batch, 1);
+	}
+
+	/**
+	 * Render the Current sprite between where the entity was at the last tick
+	 * and where it is now, and run the abstract draw event after that. This is
+	 * what {@link HelixEntityManager} calls, so override this to change how the
+	 * entity is rendered
 	 * 
 	 * @param batch - SpriteBatch to draw the entity with
+	 * @param alpha - how far between the last tick and the next one the frame is
+	 * 
+	 * @see {@link Data#getAlpha}
 	 */
-	public void render(SpriteBatch batch) {
+	public void render(SpriteBatch batch, float alpha) {
 		if (currentSprite != null) {
-			currentSprite.draw(batch, this.getPos().getX(), this.getPos().getY());
+			currentSprite.draw(batch, this.getInterpolatedX(alpha), this.getInterpolatedY(alpha));
 		}
 
 		draw(batch);
 	}
 
+	/**
+	 * Get the area the entity covers when rendered, used to cull it when it is
+	 * off screen. Defaults to the bounds of the current sprite at the entity's
+	 * position, or an empty rectangle at its position if it has no sprite.
+	 * Override this if {@link HelixEntity#draw} draws outside of that area
+	 * 
+	 * @param out - {@link Rectangle} to store the area in
+	 * @return - out
+	 */
+	public Rectangle getRenderBounds(Rectangle out) {
+		if (currentSprite != null)
+			return currentSprite.getDrawBounds(this.getPos().getX(), this.getPos().getY(), out);
+		return out.set(this.getPos().getX(), this.getPos().getY(), 0, 0);
+	}
+
 	/**
 	 * Override this as necessary. Updates the depth of the entity Default: depth =
 	 * y coord of entity
@@ -131,49 +192,27 @@ public abstract class HelixEntity extends GameObject {
 		return true;
 	}
 
-	@SuppressWarnings("unchecked")
 	/**
-	 * Find another the first occurrence of a specified {@link HelixEntity}
+	 * Find an occurrence of a specified {@link HelixEntity}
 	 * 
 	 * @param <T>         - Some class that extends {@link HelixEntity}
 	 * @param searchClass - The class of the instance to be found
 	 * @return - an instance of the searchClass type. Null if none exist
 	 */
 	public final <T extends HelixEntity> T findEntity(Class<T> searchClass) {
-		for (GameObject object : this.getData().getCurrentObjects()) {
-			if (searchClass.isInstance(object))
-				return (T) object;
-		}
-		return null;
+		return this.find(searchClass);
 	}
 
-	@SuppressWarnings("unchecked")
 	/**
-	 * Find the nearest instance of a specified class that extends {@link HelixEntity}
+	 * Find the nearest instance, other than this one, of a specified class that
+	 * extends {@link HelixEntity}
 	 * 
 	 * @param <T>         - Some class that extends {@link HelixEntity}
 	 * @param searchClass - The class of the instance to be found
 	 * @return - the nearest instance of the searchClass type. Null if none exist
 	 */
 	public final <T extends HelixEntity> T findNearestEntity(Class<T> searchClass) {
-		GameObject current = null;
-		for (GameObject object : this.getData().getCurrentObjects()) {
-			if (!searchClass.isInstance(object))
-				continue;
-			if (current == null) {
-				current = object;
-				continue;
-			}
-
-			float dis1 = this.getPos().getDistTo(object.getPos());
-			float dis2 = this.getPos().getDistTo(current.getPos());
-			if (dis1 < dis2)
-				current = object;
-		}
-		if (current != null)
-			return (T) current;
-		else
-			return null;
+		return this.findNearest(searchClass);
 	}
 
 	// Getters and Setters
@@ -200,6 +239,8 @@ public abstract class HelixEntity extends GameObject {
 	}
 
 	public final void setSprite(Sprite s) {
+		if (this.currentSprite != s)
+			this.markDirty();
 		this.currentSprite = s;
 	}
 
@@ -251,5 +292,6 @@ public abstract class HelixEntity extends GameObject {
 	 */
 	public void setActive(boolean active) {
 		this.isActive = active;
+		this.setMoving(active);
 	}
 }
@@ -1,25 +1,289 @@
 package io.sly.helix.game.entities;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.math.Vector3;
 
+import io.sly.helix.Constants;
+import io.sly.helix.game.Data;
 
+
+/**
+ * Keeps track of, updates and renders {@link HelixEntity}s. Entities are kept in
+ * a dense array and each one knows its own index in it, so removing an entity
+ * never has to search for it
+ * <br><br>
+ * Entities are also kept in a {@link SpatialHashGrid} so that rendering only
+ * has to look at the ones near the camera. Entities that are off screen are
+ * culled: neither they nor their sprite animations are drawn or updated
+ *
+ * @see {@link HelixEntityManager#setParallel(ForkJoinPool)}
+ * @author Sly
+ *
+ */
 public class HelixEntityManager {
-    
-    private List<HelixEntity> addBuffer = new ArrayList<>();
-    private List<HelixEntity> removeBuffer = new ArrayList<>();
-	public List<HelixEntity> entities = new ArrayList<>();
+
+    /**
+     * Capacity used when no sizing hint is given
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Shifts per entity the incremental depth sort may make in one frame before
+     * it gives up and falls back to a full sort
+     */
+    private static final int MAX_SORT_SHIFTS_PER_ENTITY = 8;
+
+    /**
+     * Fewest entities a single parallel update task is given
+     */
+    public static final int MIN_PARALLEL_CHUNK = 256;
+
+    /**
+     * Draw order: lower depth first, so it ends up further in the background
+     */
+    public static final Comparator<HelixEntity> DEPTH_ORDER = new Comparator<HelixEntity>() {
+        @Override
+        public int compare(HelixEntity e1, HelixEntity e2) {
+            return Float.compare(e1.getDepth(), e2.getDepth());
+        }
+    };
+
+    /**
+     * {@link HelixEntityManager#DEPTH_ORDER}, with entities at the same depth
+     * drawn in the order they were added. The grid hands entities back in no
+     * particular order, so without this ties would flicker as entities move
+     */
+    private static final Comparator<HelixEntity> DRAW_ORDER = new Comparator<HelixEntity>() {
+        @Override
+        public int compare(HelixEntity e1, HelixEntity e2) {
+            int order = Float.compare(e1.getDepth(), e2.getDepth());
+            return order != 0 ? order : Long.compare(e1.addOrder, e2.addOrder);
+        }
+    };
+
+    private final List<HelixEntity> addBuffer;
+    private final List<HelixEntity> removeBuffer;
+
+    /**
+     * Dense array of managed entities. Only the first {@link HelixEntityManager#size} are used
+     */
+    private HelixEntity[] entities;
+    private int size;
+
+    /**
+     * Managed entities in draw order. Kept sorted by depth between frames, so
+     * re-sorting is cheap when entities only move a little each frame
+     */
+    private HelixEntity[] renderQueue;
+    /**
+     * Depth of each entity in {@link HelixEntityManager#renderQueue} as of the last sort
+     */
+    private float[] depthKeys;
+
+    /**
+     * Read-only view of the managed entities
+     */
+    private final List<HelixEntity> view = new AbstractList<HelixEntity>() {
+        @Override
+        public HelixEntity get(int index) {
+            return HelixEntityManager.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    };
+
+    /**
+     * Whether removals keep the remaining entities in order. When false, each
+     * removal swaps the last entity into the freed index instead
+     */
+    private boolean preserveOrder = true;
+
+    /**
+     * Pool to update entities on, null to update them serially
+     */
+    private ForkJoinPool pool;
+    /**
+     * Deferred mutations of each chunk of a parallel update, reused between frames
+     */
+    private CommandBuffer[] commandBuffers = new CommandBuffer[0];
+
+    /**
+     * Data to get the current camera from, null if entities are never culled
+     * unless a camera is passed to {@link HelixEntityManager#render(SpriteBatch, Camera)}
+     */
+    private final Data data;
+
+    /**
+     * Index of the managed entities by position, used to find the ones on screen
+     */
+    private final SpatialHashGrid cullGrid;
+    private final List<GameObject> visible = new ArrayList<>();
+    /**
+     * Entities found on screen by the last render, in draw order
+     */
+    private HelixEntity[] drawQueue = new HelixEntity[0];
+    /**
+     * Number of entities added so far, used to stamp {@link HelixEntity#addOrder}
+     */
+    private long added;
+    private final Rectangle cullBounds = new Rectangle();
+    private boolean culling = true;
+    /**
+     * Distance outside of the camera view to look for entities in. Entities are
+     * bucketed by position, so this needs to cover how far a sprite can reach
+     * from its entity's position
+     */
+    private float cullMargin = Constants.SPATIAL_CELL_SIZE;
+    /**
+     * Largest render bounds seen so far, which widens the cull margin as needed
+     */
+    private float maxExtent;
+    private int drawnCount, culledCount;
 
     public HelixEntityManager() {
+        this(null, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity - number of entities to make room for up front
+     */
+    public HelixEntityManager(int capacity) {
+        this(null, capacity);
+    }
+
+    /**
+     * @param data - {@link Data} whose current camera entities are culled against
+     */
+    public HelixEntityManager(Data data) {
+        this(data, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param data - {@link Data} whose current camera entities are culled against
+     * @param capacity - number of entities to make room for up front
+     */
+    public HelixEntityManager(Data data, int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.data = data;
+        this.cullGrid = new SpatialHashGrid(Constants.SPATIAL_CELL_SIZE);
+        this.entities = new HelixEntity[capacity];
+        this.renderQueue = new HelixEntity[capacity];
+        this.depthKeys = new float[capacity];
+        this.addBuffer = new ArrayList<>(capacity);
+        this.removeBuffer = new ArrayList<>(capacity);
     }
 
+    /**
+     * Render every active entity that is on screen of the current camera, in depth order
+     * @param sb - {@link SpriteBatch} to draw with
+     *
+     * @see {@link HelixEntityManager#DEPTH_ORDER}, {@link Data#getCurrentCamera}
+     */
     public void render(SpriteBatch sb) {
-		for(HelixEntity entity : entities) {
-            if(entity.isActive())
-                entity.render(sb);
+        if(data != null)
+            this.render(sb, data.getCurrentCamera(), data.getAlpha());
+        else
+            this.render(sb, null, 1);
+    }
+
+    /**
+     * Render every active entity that is on screen of a camera, in depth order
+     * @param sb - {@link SpriteBatch} to draw with
+     * @param camera - camera to cull against, null to draw every active entity
+     *
+     * @see {@link HelixEntityManager#DEPTH_ORDER}
+     */
+    public void render(SpriteBatch sb, Camera camera) {
+        this.render(sb, camera, 1);
+    }
+
+    /**
+     * Render every active entity that is on screen of a camera, in depth order,
+     * interpolated between ticks
+     * @param sb - {@link SpriteBatch} to draw with
+     * @param camera - camera to cull against, null to draw every active entity
+     * @param alpha - how far between the last tick and the next one the frame is
+     *
+     * @see {@link HelixEntityManager#DEPTH_ORDER}, {@link Data#getAlpha}
+     */
+    public void render(SpriteBatch sb, Camera camera, float alpha) {
+        drawnCount = 0;
+        culledCount = 0;
+
+        if(camera == null || !culling) {
+            sortRenderQueue();
+            for(int i = 0; i < size; i++) {
+                HelixEntity entity = renderQueue[i];
+                if(entity.isActive()) {
+                    entity.render(sb, alpha);
+                    drawnCount++;
+                }
+            }
+            return;
+        }
+
+        // Only the entities on screen are sorted and drawn, the rest are never looked at
+        int count = collectVisible(camera);
+        for(int i = 0; i < count; i++)
+            drawQueue[i].render(sb, alpha);
+        Arrays.fill(drawQueue, 0, count, null);
+        drawnCount = count;
+    }
+
+    /**
+     * Collect every active entity whose render bounds overlap the view of a
+     * camera into {@link HelixEntityManager#drawQueue}, sorted into draw order.
+     * Only the grid cells around the view are visited
+     * @return the number of entities collected
+     */
+    private int collectVisible(Camera camera) {
+        // Bounding box of the view, which works for any camera looking down the z axis
+        Vector3[] corners = camera.frustum.planePoints;
+        float left = corners[0].x, right = left, bottom = corners[0].y, top = bottom;
+        for(int i = 1; i < corners.length; i++) {
+            left = Math.min(left, corners[i].x);
+            right = Math.max(right, corners[i].x);
+            bottom = Math.min(bottom, corners[i].y);
+            top = Math.max(top, corners[i].y);
+        }
+
+        float margin = Math.max(cullMargin, maxExtent);
+        visible.clear();
+        cullGrid.queryRect(left - margin, bottom - margin, right - left + 2 * margin, top - bottom + 2 * margin, visible);
+        if(drawQueue.length < visible.size())
+            drawQueue = new HelixEntity[Math.max(visible.size(), drawQueue.length * 2)];
+
+        int count = 0, inactive = 0;
+        for(int i = 0; i < visible.size(); i++) {
+            HelixEntity entity = (HelixEntity) visible.get(i);
+            Rectangle bounds = entity.getRenderBounds(cullBounds);
+            maxExtent = Math.max(maxExtent, Math.max(bounds.width, bounds.height));
+            if(!entity.isActive())
+                inactive++;
+            else if(bounds.x <= right && bounds.x + bounds.width >= left
+                    && bounds.y <= top && bounds.y + bounds.height >= bottom)
+                drawQueue[count++] = entity;
         }
+        visible.clear();
+        // Inactive entities off screen are never looked at, so they count as culled
+        culledCount = size - count - inactive;
+
+        Arrays.sort(drawQueue, 0, count, DRAW_ORDER);
+        return count;
     }
 
     public void update(float delta) {
@@ -28,41 +292,477 @@ public class HelixEntityManager {
         removeEntities();
     }
 
+    /**
+     * Queue an entity to be added at the start of the next update
+     * @param e - entity to add
+     */
     public void add(HelixEntity e) {
-        addBuffer.add(e);
+        if(e == null)
+            return;
+
+        CommandBuffer buffer = CommandBuffer.current();
+        if(buffer != null)
+            buffer.add(this, e);
+        else
+            addBuffer.add(e);
+    }
+
+    /**
+     * Queue a batch of entities to be added at the start of the next update,
+     * in the order given
+     * @param batch - entities to add
+     */
+    public void addAll(Collection<? extends HelixEntity> batch) {
+        if(CommandBuffer.current() != null) {
+            for(HelixEntity e : batch)
+                this.add(e);
+            return;
+        }
+        addBuffer.addAll(batch);
     }
 
     public void remove(HelixEntity e) {
         this.destroy(e);
     }
 
+    /**
+     * Dispose of an entity and queue it to be removed at the end of the update.
+     * Destroying the same entity more than once does nothing
+     * @param e - entity to destroy
+     */
     public void destroy(HelixEntity e) {
-        // e.setActive(false);
+        if(e == null || e.pendingRemoval)
+            return;
+
+        CommandBuffer buffer = CommandBuffer.current();
+        if(buffer != null) {
+            buffer.destroy(this, e);
+            return;
+        }
+
+        e.pendingRemoval = true;
         e.dispose();
         removeBuffer.add(e);
     }
 
+    /**
+     * Destroy an entity and recycle it into the {@link EntityPool} of its
+     * class once it has been removed, instead of leaving it to the GC. Entities
+     * that came from {@link io.sly.helix.game.Data#obtain} are recycled by
+     * {@link HelixEntityManager#destroy} as well
+     * @param e - entity to free
+     */
+    public void free(HelixEntity e) {
+        if(e == null)
+            return;
+
+        CommandBuffer buffer = CommandBuffer.current();
+        if(buffer != null) {
+            buffer.free(this, e);
+            return;
+        }
+
+        if(e.pool == null)
+            e.pool = e.getData().getPool(e.getClass());
+        this.destroy(e);
+    }
+
+    /**
+     * Destroy a batch of entities
+     * @param batch - entities to destroy
+     *
+     * @see {@link HelixEntityManager#destroy}
+     */
+    public void destroyAll(Collection<? extends HelixEntity> batch) {
+        for(HelixEntity e : batch)
+            this.destroy(e);
+    }
+
+    /**
+     * Make sure there is room for at least some number of entities without growing
+     * @param capacity - number of entities
+     */
+    public void ensureCapacity(int capacity) {
+        if(capacity <= entities.length)
+            return;
+
+        capacity = Math.max(capacity, entities.length + (entities.length >> 1));
+        entities = Arrays.copyOf(entities, capacity);
+        renderQueue = Arrays.copyOf(renderQueue, capacity);
+        depthKeys = Arrays.copyOf(depthKeys, capacity);
+    }
+
     private void addEntities() {
-        while(!addBuffer.isEmpty()) {
-            HelixEntity e = addBuffer.get(0);
-            // e.setActive(true);
-            if(e != null)
-                entities.add(e);
-            addBuffer.remove(0);
+        if(addBuffer.isEmpty())
+            return;
+
+        ensureCapacity(size + addBuffer.size());
+        for(int i = 0; i < addBuffer.size(); i++) {
+            HelixEntity e = addBuffer.get(i);
+            // Skip duplicates and entities destroyed before they were ever added
+            if(e == null || e.managerIndex != -1 || e.pendingRemoval)
+                continue;
+            e.managerIndex = size;
+            e.addOrder = added++;
+            cullGrid.insert(e);
+            maxExtent = Math.max(maxExtent, extentOf(e));
+            renderQueue[size] = e;
+            depthKeys[size] = e.getDepth();
+            entities[size++] = e;
         }
+        addBuffer.clear();
+    }
+
+    private float extentOf(HelixEntity e) {
+        Rectangle bounds = e.getRenderBounds(cullBounds);
+        return Math.max(bounds.width, bounds.height);
     }
 
     private void removeEntities() {
-        while(!removeBuffer.isEmpty()) {
-            entities.remove(removeBuffer.get(0));
-            removeBuffer.remove(0);
+        if(removeBuffer.isEmpty())
+            return;
+
+        int queued = size;
+        if(preserveOrder) {
+            // Null out every removed entity, then close the gaps in one pass
+            for(int i = 0; i < removeBuffer.size(); i++) {
+                HelixEntity e = removeBuffer.get(i);
+                if(isManaged(e))
+                    entities[e.managerIndex] = null;
+                e.managerIndex = -1;
+                e.pendingRemoval = false;
+                recycle(e);
+            }
+
+            int write = 0;
+            for(int read = 0; read < size; read++) {
+                HelixEntity e = entities[read];
+                if(e == null)
+                    continue;
+                e.managerIndex = write;
+                entities[write++] = e;
+            }
+            Arrays.fill(entities, write, size, null);
+            size = write;
+        } else {
+            for(int i = 0; i < removeBuffer.size(); i++) {
+                HelixEntity e = removeBuffer.get(i);
+                if(isManaged(e))
+                    swapRemove(e);
+                e.managerIndex = -1;
+                e.pendingRemoval = false;
+                recycle(e);
+            }
         }
+        removeBuffer.clear();
+        compactRenderQueue(queued);
+    }
+
+    /**
+     * Drop a removed entity from the cull grid and hand it back to its pool, if it has one
+     */
+    private void recycle(HelixEntity e) {
+        cullGrid.remove(e);
+        if(e.pool != null)
+            e.pool.freeObject(e);
+    }
+
+    /**
+     * Drop removed entities from the render queue, keeping the rest in draw order
+     * @param queued - number of entities in the queue before the removals
+     */
+    private void compactRenderQueue(int queued) {
+        int write = 0;
+        for(int read = 0; read < queued; read++) {
+            HelixEntity e = renderQueue[read];
+            if(e.managerIndex == -1)
+                continue;
+            depthKeys[write] = depthKeys[read];
+            renderQueue[write++] = e;
+        }
+        Arrays.fill(renderQueue, write, queued, null);
+    }
+
+    /**
+     * Re-sort the render queue by depth. Uses an insertion sort, which is
+     * close to a single comparison per entity when the queue is already nearly
+     * sorted. If entities have moved so much that the insertion sort would do
+     * too many shifts, falls back to a full sort
+     */
+    private void sortRenderQueue() {
+        HelixEntity[] queue = renderQueue;
+        float[] keys = depthKeys;
+        for(int i = 0; i < size; i++)
+            keys[i] = queue[i].getDepth();
+
+        int shiftBudget = size * MAX_SORT_SHIFTS_PER_ENTITY;
+        for(int i = 1; i < size; i++) {
+            float key = keys[i];
+            if(keys[i - 1] <= key)
+                continue;
+
+            HelixEntity e = queue[i];
+            int j = i - 1;
+            do {
+                keys[j + 1] = keys[j];
+                queue[j + 1] = queue[j];
+                j--;
+            } while(j >= 0 && keys[j] > key);
+            keys[j + 1] = key;
+            queue[j + 1] = e;
+
+            shiftBudget -= i - j - 1;
+            if(shiftBudget < 0) {
+                Arrays.sort(queue, 0, size, DEPTH_ORDER);
+                for(int k = 0; k < size; k++)
+                    keys[k] = queue[k].getDepth();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove an entity by moving the last entity into its index
+     */
+    private void swapRemove(HelixEntity e) {
+        int index = e.managerIndex;
+        HelixEntity last = entities[--size];
+        entities[size] = null;
+        if(last != e) {
+            entities[index] = last;
+            last.managerIndex = index;
+        }
+    }
+
+    private boolean isManaged(HelixEntity e) {
+        return e.managerIndex >= 0 && e.managerIndex < size && entities[e.managerIndex] == e;
     }
 
     private void updateEntities(float delta) {
-		for(HelixEntity entity : entities) {
+        if(pool != null) {
+            updateEntitiesParallel(delta);
+            return;
+        }
+
+        for(int i = 0; i < size; i++) {
+            HelixEntity entity = entities[i];
             if(entity.isActive())
                 entity.update(delta);
         }
     }
+
+    /**
+     * Split the entities into fixed chunks and update them on the pool. Writes
+     * that would race are recorded into each chunk's {@link CommandBuffer},
+     * which are applied in chunk order once every chunk is done, so the
+     * outcome does not depend on how the entities were split. Too few entities
+     * to split are run as a single chunk on the calling thread, in the same phase
+     */
+    private void updateEntitiesParallel(float delta) {
+        int chunks = Math.max(1, Math.min(size / MIN_PARALLEL_CHUNK, pool.getParallelism() * 4));
+        if(commandBuffers.length < chunks) {
+            int old = commandBuffers.length;
+            commandBuffers = Arrays.copyOf(commandBuffers, chunks);
+            for(int i = old; i < chunks; i++)
+                commandBuffers[i] = new CommandBuffer();
+        }
+
+        // Workers read each other through these copies, and search the grid without changing its bounds
+        for(int i = 0; i < size; i++)
+            entities[i].publish();
+        if(data != null && data.getCurrentScreen() != null)
+            data.getCurrentScreen().getGrid().tightenBounds();
+
+        CommandBuffer.beginPhase();
+        try {
+            UpdateTask task = new UpdateTask(0, chunks, chunks, delta);
+            if(chunks == 1)
+                task.compute();
+            else
+                pool.invoke(task);
+        } catch(RuntimeException | Error e) {
+            // Don't apply half an update on the next one
+            for(int i = 0; i < chunks; i++)
+                commandBuffers[i].clear();
+            throw e;
+        } finally {
+            CommandBuffer.endPhase();
+            for(int i = 0; i < size; i++)
+                entities[i].unpublish();
+        }
+
+        for(int i = 0; i < chunks; i++)
+            commandBuffers[i].apply();
+    }
+
+    /**
+     * Updates a range of chunks, splitting in half until it is down to one
+     */
+    private final class UpdateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int firstChunk, lastChunk, chunks;
+        private final float delta;
+
+        UpdateTask(int firstChunk, int lastChunk, int chunks, float delta) {
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+            this.chunks = chunks;
+            this.delta = delta;
+        }
+
+        @Override
+        protected void compute() {
+            if(lastChunk - firstChunk > 1) {
+                int mid = (firstChunk + lastChunk) >>> 1;
+                invokeAll(new UpdateTask(firstChunk, mid, chunks, delta), new UpdateTask(mid, lastChunk, chunks, delta));
+                return;
+            }
+
+            CommandBuffer buffer = commandBuffers[firstChunk];
+            int from = (int)((long)size * firstChunk / chunks);
+            int to = (int)((long)size * (firstChunk + 1) / chunks);
+
+            CommandBuffer outer = buffer.bind();
+            try {
+                for(int i = from; i < to; i++) {
+                    HelixEntity entity = entities[i];
+                    if(!entity.isActive())
+                        continue;
+                    buffer.owner = entity;
+                    entity.update(delta);
+                }
+            } finally {
+                buffer.owner = null;
+                buffer.unbind(outer);
+            }
+        }
+    }
+
+    // Getters and Setters
+
+    /**
+     * @return number of managed entities
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index - index of the entity, less than {@link HelixEntityManager#size}
+     */
+    public HelixEntity get(int index) {
+        if(index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return entities[index];
+    }
+
+    /**
+     * @return a live, read-only view of the managed entities
+     */
+    public List<HelixEntity> getEntities() {
+        return view;
+    }
+
+    public boolean contains(HelixEntity e) {
+        return e != null && isManaged(e);
+    }
+
+    /**
+     * @return number of entities drawn by the last render
+     */
+    public int getDrawnCount() {
+        return drawnCount;
+    }
+
+    /**
+     * @return number of entities skipped by the last render for being off
+     * screen. Inactive entities are only told apart near the screen, so the
+     * ones far off it are counted too
+     */
+    public int getCulledCount() {
+        return culledCount;
+    }
+
+    public boolean isCulling() {
+        return culling;
+    }
+
+    /**
+     * Set whether to skip rendering entities that are off screen. True by default
+     * @param culling
+     */
+    public void setCulling(boolean culling) {
+        this.culling = culling;
+    }
+
+    public float getCullMargin() {
+        return cullMargin;
+    }
+
+    /**
+     * Set how far outside of the camera view to look for entities. The margin
+     * grows on its own to fit the largest sprite seen, so this only needs to be
+     * raised for entities that draw well outside of their
+     * {@link HelixEntity#getRenderBounds}
+     * @param cullMargin - distance (px)
+     */
+    public void setCullMargin(float cullMargin) {
+        this.cullMargin = cullMargin;
+    }
+
+    public boolean isParallel() {
+        return pool != null;
+    }
+
+    /**
+     * Update entities on the common {@link ForkJoinPool}, or go back to
+     * updating them serially on the calling thread
+     * @param parallel
+     *
+     * @see {@link HelixEntityManager#setParallel(ForkJoinPool)}
+     */
+    public void setParallel(boolean parallel) {
+        this.setParallel(parallel ? ForkJoinPool.commonPool() : null);
+    }
+
+    /**
+     * Update entities on a {@link ForkJoinPool}. While entities are being
+     * updated in parallel:
+     * <ul>
+     * 	<li>{@link HelixEntityManager#add}, {@link HelixEntityManager#destroy},
+     * 	{@link GameObject#dispose} and setting alarms are deferred</li>
+     * 	<li>Moving, turning or changing the speed of any object other than the
+     * 	one being updated is deferred. The one being updated sees its own changes
+     * 	straight away, but is only re-bucketed in its {@link SpatialHashGrid}s
+     * 	once the phase is over</li>
+     * 	<li>Every other object's {@link GameObject#getPos}, {@link GameObject#getDirection}
+     * 	and {@link GameObject#getSpeed} return what they were when the phase began</li>
+     * 	<li>Objects created get their handle and {@link TransformStore} slot once the
+     * 	phase is over, and adding objects to or removing them from a screen or
+     * 	{@link io.sly.helix.game.Data} is deferred</li>
+     * </ul>
+     * Deferred changes are applied in entity order at the end of the phase, so
+     * results are the same however many threads the pool has. They match a
+     * serial update whenever entities only read objects that don't change
+     * during it. Entities should otherwise only change their own fields in
+     * their step events
+     * @param pool - pool to update on, null to update serially
+     */
+    public void setParallel(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public boolean isPreservingOrder() {
+        return preserveOrder;
+    }
+
+    /**
+     * Set whether removals keep the remaining entities in order (default), or
+     * swap the last entity into each freed index
+     * @param preserveOrder
+     */
+    public void setPreserveOrder(boolean preserveOrder) {
+        this.preserveOrder = preserveOrder;
+    }
 }
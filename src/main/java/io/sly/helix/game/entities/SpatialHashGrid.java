@@ -0,0 +1,514 @@
+package io.sly.helix.game.entities;
+
+import java.util.List;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+
+/**
+ * Uniform spatial hash grid of {@link GameObject}s, bucketed by the cell their
+ * position falls in. Objects are re-bucketed whenever their position is changed
+ * through {@link GameObject#setPos}, {@link GameObject#addPos} or
+ * {@link GameObject#move}, so lookups only need to visit nearby cells
+ *
+ * @author Sly
+ *
+ * @see {@link io.sly.helix.gfx.Screen#getGrid}
+ */
+public class SpatialHashGrid {
+
+	/**
+	 * Most emptied cells kept to reuse
+	 */
+	private static final int MAX_SPARE_CELLS = 64;
+
+	/**
+	 * Width and height of a single cell (px)
+	 */
+	private final float cellSize;
+	private final float invCellSize;
+
+	/**
+	 * Cells keyed by their packed (x, y) cell coordinates
+	 */
+	private final LongMap<Array<Entry>> cells = new LongMap<>();
+
+	/**
+	 * Number of objects in the grid
+	 */
+	private int size;
+
+	/**
+	 * Emptied cells kept to reuse, so objects moving between cells don't
+	 * allocate a new one each time
+	 */
+	private final Array<Array<Entry>> spareCells = new Array<>();
+
+	/**
+	 * Bounds of the occupied cells, used to stop nearest searches once every
+	 * occupied cell has been visited
+	 */
+	private int minCellX, minCellY, maxCellX, maxCellY;
+	/**
+	 * Whether or not a cell on the edge of the bounds was emptied since they
+	 * were last worked out. Cleared by {@link SpatialHashGrid#tightenBounds}
+	 */
+	private boolean boundsStale;
+
+	/**
+	 * Create a new grid
+	 *
+	 * @param cellSize - width and height of each cell (px)
+	 */
+	public SpatialHashGrid(float cellSize) {
+		if (cellSize <= 0)
+			throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+		this.cellSize = cellSize;
+		this.invCellSize = 1f / cellSize;
+		this.resetBounds();
+	}
+
+	/**
+	 * Add an object to the grid at its current position. During a parallel
+	 * update of a {@link HelixEntityManager} this is deferred until the end of
+	 * the phase
+	 *
+	 * @param object - object to add
+	 * @return - false if the object is null or already in this grid
+	 */
+	public boolean insert(GameObject object) {
+		if (object == null || this.entryOf(object) != null)
+			return false;
+
+		CommandBuffer buffer = CommandBuffer.current();
+		if (buffer != null) {
+			buffer.insert(this, object);
+			return true;
+		}
+
+		Entry entry = new Entry(this, object);
+		entry.next = object.gridEntries;
+		object.gridEntries = entry;
+
+		this.addToCell(entry, this.keyOf(object.getPos().getX(), object.getPos().getY()));
+		size++;
+		return true;
+	}
+
+	/**
+	 * Remove an object from the grid. Deferred until the end of a parallel
+	 * update, like {@link SpatialHashGrid#insert}
+	 *
+	 * @param object - object to remove
+	 * @return - false if the object was not in this grid
+	 */
+	public boolean remove(GameObject object) {
+		if (object == null)
+			return false;
+
+		CommandBuffer buffer = CommandBuffer.current();
+		if (buffer != null) {
+			if (this.entryOf(object) == null)
+				return false;
+			buffer.remove(this, object);
+			return true;
+		}
+
+		Entry entry = this.unlink(object);
+		if (entry == null)
+			return false;
+
+		this.removeFromCell(entry);
+		if (--size == 0)
+			this.resetBounds();
+		return true;
+	}
+
+	/**
+	 * Whether or not an object is in this grid
+	 *
+	 * @param object - object to look for
+	 */
+	public boolean contains(GameObject object) {
+		return object != null && this.entryOf(object) != null;
+	}
+
+	/**
+	 * Move an entry to a new cell if its object has left its current one
+	 *
+	 * @param entry - entry of the object that moved
+	 */
+	void update(Entry entry) {
+		long key = this.keyOf(entry.object.getPos().getX(), entry.object.getPos().getY());
+		if (key == entry.key)
+			return;
+
+		this.removeFromCell(entry);
+		this.addToCell(entry, key);
+	}
+
+	/**
+	 * Collect every object whose position is inside a rectangle
+	 *
+	 * @param x      - left edge (px)
+	 * @param y      - bottom edge (px)
+	 * @param width  - width (px)
+	 * @param height - height (px)
+	 * @param out    - list to add the objects found to
+	 * @return - out
+	 */
+	public <L extends List<? super GameObject>> L queryRect(float x, float y, float width, float height, L out) {
+		float right = x + width, top = y + height;
+		// Stale bounds still cover every occupied cell, so nothing outside them needs a look
+		int cx0 = Math.max(this.cell(x), minCellX), cy0 = Math.max(this.cell(y), minCellY);
+		int cx1 = Math.min(this.cell(right), maxCellX), cy1 = Math.min(this.cell(top), maxCellY);
+		if (cx0 > cx1 || cy0 > cy1)
+			return out;
+
+		// Covers more cells than are occupied: cheaper to look at every occupied cell than probe empty ones
+		if ((cx1 - (long) cx0 + 1) * (cy1 - (long) cy0 + 1) > cells.size) {
+			for (Array<Entry> cell : new LongMap.Values<>(cells))
+				inRect(cell, x, y, right, top, out);
+			return out;
+		}
+
+		// Long counters, so a range ending on the last int cell doesn't overflow
+		for (long cx = cx0; cx <= cx1; cx++) {
+			for (long cy = cy0; cy <= cy1; cy++) {
+				Array<Entry> cell = cells.get(pack((int) cx, (int) cy));
+				if (cell != null)
+					inRect(cell, x, y, right, top, out);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Collect every object whose position is inside a rectangle
+	 *
+	 * @param rect - area to search
+	 * @param out  - list to add the objects found to
+	 * @return - out
+	 */
+	public <L extends List<? super GameObject>> L queryRect(Rectangle rect, L out) {
+		return this.queryRect(rect.x, rect.y, rect.width, rect.height, out);
+	}
+
+	/**
+	 * Collect every object within some distance of a point
+	 *
+	 * @param x      - x coordinate of the centre
+	 * @param y      - y coordinate of the centre
+	 * @param radius - search radius (px)
+	 * @param out    - list to add the objects found to
+	 * @return - out
+	 */
+	public <L extends List<? super GameObject>> L queryRadius(float x, float y, float radius, L out) {
+		float radiusSq = radius * radius;
+		// Clamped to the occupied cells, like queryRect
+		int cx0 = Math.max(this.cell(x - radius), minCellX), cy0 = Math.max(this.cell(y - radius), minCellY);
+		int cx1 = Math.min(this.cell(x + radius), maxCellX), cy1 = Math.min(this.cell(y + radius), maxCellY);
+		if (cx0 > cx1 || cy0 > cy1)
+			return out;
+
+		if ((cx1 - (long) cx0 + 1) * (cy1 - (long) cy0 + 1) > cells.size) {
+			for (Array<Entry> cell : new LongMap.Values<>(cells))
+				inRadius(cell, x, y, radiusSq, out);
+			return out;
+		}
+
+		for (long cx = cx0; cx <= cx1; cx++) {
+			for (long cy = cy0; cy <= cy1; cy++) {
+				Array<Entry> cell = cells.get(pack((int) cx, (int) cy));
+				if (cell != null)
+					inRadius(cell, x, y, radiusSq, out);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Find the nearest instance of some class to a point. Searches outwards one
+	 * ring of cells at a time and stops as soon as no unvisited cell can hold
+	 * anything closer
+	 *
+	 * @param x           - x coordinate to search from
+	 * @param y           - y coordinate to search from
+	 * @param searchClass - Type of class to search for
+	 * @param exclude     - object to skip (usually the one searching). May be null
+	 * @return - the nearest instance of searchClass or null if none is found
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T findNearest(float x, float y, Class<T> searchClass, GameObject exclude) {
+		if (size == 0)
+			return null;
+		// Searches during a parallel update only read the bounds. Stale ones still cover every occupied cell
+		if (boundsStale && CommandBuffer.current() == null)
+			this.tightenBounds();
+
+		int cx = this.cell(x), cy = this.cell(y);
+		int maxRing = Math.max(Math.max(cx - minCellX, maxCellX - cx), Math.max(cy - minCellY, maxCellY - cy));
+
+		GameObject nearest = null;
+		float nearestSq = Float.POSITIVE_INFINITY;
+		int visited = 0;
+
+		for (int ring = 0; ring <= maxRing; ring++) {
+			if (nearest != null) {
+				float reach = (ring - 1) * cellSize;
+				if (reach > 0 && nearestSq <= reach * reach)
+					break;
+			}
+
+			// Sparse grids: cheaper to look at every occupied cell than keep probing empty ones
+			if (visited > cells.size)
+				return (T) this.findNearestLinear(x, y, searchClass, exclude);
+
+			if (ring == 0) {
+				nearest = this.nearestInCell(cx, cy, x, y, searchClass, exclude, nearest, nearestSq);
+				visited++;
+			} else {
+				for (int i = -ring; i <= ring; i++) {
+					nearest = this.nearestInCell(cx + i, cy - ring, x, y, searchClass, exclude, nearest, nearestSq);
+					nearestSq = distSq(nearest, x, y);
+					nearest = this.nearestInCell(cx + i, cy + ring, x, y, searchClass, exclude, nearest, nearestSq);
+					nearestSq = distSq(nearest, x, y);
+				}
+				for (int i = -ring + 1; i <= ring - 1; i++) {
+					nearest = this.nearestInCell(cx - ring, cy + i, x, y, searchClass, exclude, nearest, nearestSq);
+					nearestSq = distSq(nearest, x, y);
+					nearest = this.nearestInCell(cx + ring, cy + i, x, y, searchClass, exclude, nearest, nearestSq);
+					nearestSq = distSq(nearest, x, y);
+				}
+				visited += 8 * ring;
+			}
+			nearestSq = distSq(nearest, x, y);
+		}
+
+		return (T) nearest;
+	}
+
+	/**
+	 * Remove every object from the grid
+	 */
+	public void clear() {
+		for (Array<Entry> cell : cells.values()) {
+			for (int i = 0; i < cell.size; i++)
+				this.unlink(cell.get(i).object);
+		}
+		cells.clear();
+		size = 0;
+		this.resetBounds();
+	}
+
+	// Getters and Setters
+
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// Helpers
+
+	private GameObject nearestInCell(int cx, int cy, float x, float y, Class<?> searchClass, GameObject exclude,
+			GameObject nearest, float nearestSq) {
+		Array<Entry> cell = cells.get(pack(cx, cy));
+		if (cell == null)
+			return nearest;
+		return this.nearestInCell(cell, x, y, searchClass, exclude, nearest, nearestSq);
+	}
+
+	private static void inRect(Array<Entry> cell, float x, float y, float right, float top, List<? super GameObject> out) {
+		Entry[] entries = cell.items;
+		for (int i = 0; i < cell.size; i++) {
+			GameObject object = entries[i].object;
+			float ox = object.getPos().getX(), oy = object.getPos().getY();
+			if (ox >= x && ox <= right && oy >= y && oy <= top)
+				out.add(object);
+		}
+	}
+
+	private static void inRadius(Array<Entry> cell, float x, float y, float radiusSq, List<? super GameObject> out) {
+		Entry[] entries = cell.items;
+		for (int i = 0; i < cell.size; i++) {
+			if (distSq(entries[i].object, x, y) <= radiusSq)
+				out.add(entries[i].object);
+		}
+	}
+
+	private GameObject findNearestLinear(float x, float y, Class<?> searchClass, GameObject exclude) {
+		GameObject nearest = null;
+		float nearestSq = Float.POSITIVE_INFINITY;
+		// Not the map's own iterator, which every caller shares
+		for (Array<Entry> cell : new LongMap.Values<>(cells)) {
+			nearest = this.nearestInCell(cell, x, y, searchClass, exclude, nearest, nearestSq);
+			nearestSq = distSq(nearest, x, y);
+		}
+		return nearest;
+	}
+
+	private GameObject nearestInCell(Array<Entry> cell, float x, float y, Class<?> searchClass, GameObject exclude,
+			GameObject nearest, float nearestSq) {
+		Entry[] entries = cell.items;
+		for (int i = 0; i < cell.size; i++) {
+			GameObject object = entries[i].object;
+			if (object == exclude || !searchClass.isInstance(object))
+				continue;
+
+			float distSq = distSq(object, x, y);
+			if (distSq < nearestSq) {
+				nearest = object;
+				nearestSq = distSq;
+			}
+		}
+		return nearest;
+	}
+
+	private static float distSq(GameObject object, float x, float y) {
+		if (object == null)
+			return Float.POSITIVE_INFINITY;
+		float dx = object.getPos().getX() - x;
+		float dy = object.getPos().getY() - y;
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * Take this grid's entry out of an object's chain of grid memberships
+	 * @return - the entry, or null if the object is not in this grid
+	 */
+	private Entry unlink(GameObject object) {
+		Entry previous = null;
+		for (Entry entry = object.gridEntries; entry != null; entry = entry.next) {
+			if (entry.grid == this) {
+				if (previous == null)
+					object.gridEntries = entry.next;
+				else
+					previous.next = entry.next;
+				entry.next = null;
+				return entry;
+			}
+			previous = entry;
+		}
+		return null;
+	}
+
+	private Entry entryOf(GameObject object) {
+		for (Entry entry = object.gridEntries; entry != null; entry = entry.next) {
+			if (entry.grid == this)
+				return entry;
+		}
+		return null;
+	}
+
+	private void addToCell(Entry entry, long key) {
+		Array<Entry> cell = cells.get(key);
+		if (cell == null) {
+			cell = spareCells.size > 0 ? spareCells.pop() : new Array<>(false, 8, Entry.class);
+			cells.put(key, cell);
+		}
+
+		entry.key = key;
+		entry.slot = cell.size;
+		cell.add(entry);
+
+		int cx = (int) (key >> 32), cy = (int) key;
+		minCellX = Math.min(minCellX, cx);
+		minCellY = Math.min(minCellY, cy);
+		maxCellX = Math.max(maxCellX, cx);
+		maxCellY = Math.max(maxCellY, cy);
+	}
+
+	/**
+	 * Swap-remove an entry from its cell, dropping the cell once it's empty
+	 */
+	private void removeFromCell(Entry entry) {
+		Array<Entry> cell = cells.get(entry.key);
+		Entry last = cell.pop();
+		if (last != entry) {
+			cell.set(entry.slot, last);
+			last.slot = entry.slot;
+		}
+		entry.slot = -1;
+
+		if (cell.size > 0)
+			return;
+		cells.remove(entry.key);
+		if (spareCells.size < MAX_SPARE_CELLS)
+			spareCells.add(cell);
+
+		int cx = (int) (entry.key >> 32), cy = (int) entry.key;
+		if (cx == minCellX || cx == maxCellX || cy == minCellY || cy == maxCellY)
+			boundsStale = true;
+	}
+
+	/**
+	 * Shrink the bounds back to the occupied cells if an edge cell has emptied
+	 * since they were last worked out. Done on the next nearest search after
+	 * an edge cell empties, so at most once per search however much moved in
+	 * between. Searches during a parallel update leave it to
+	 * {@link HelixEntityManager}, which does it before the update begins
+	 */
+	void tightenBounds() {
+		if (!boundsStale)
+			return;
+		this.resetBounds();
+		LongMap.Keys keys = cells.keys();
+		while (keys.hasNext) {
+			long key = keys.next();
+			int cx = (int) (key >> 32), cy = (int) key;
+			minCellX = Math.min(minCellX, cx);
+			minCellY = Math.min(minCellY, cy);
+			maxCellX = Math.max(maxCellX, cx);
+			maxCellY = Math.max(maxCellY, cy);
+		}
+	}
+
+	private void resetBounds() {
+		minCellX = minCellY = Integer.MAX_VALUE;
+		maxCellX = maxCellY = Integer.MIN_VALUE;
+		boundsStale = false;
+	}
+
+	private int cell(float coord) {
+		return (int) Math.floor(coord * invCellSize);
+	}
+
+	private long keyOf(float x, float y) {
+		return pack(this.cell(x), this.cell(y));
+	}
+
+	private static long pack(int cx, int cy) {
+		return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Membership of a single {@link GameObject} in a single grid. Objects keep a
+	 * linked chain of these so they can sit in more than one grid at a time
+	 */
+	static final class Entry {
+		final SpatialHashGrid grid;
+		final GameObject object;
+
+		/**
+		 * Key of the cell the object is currently bucketed in
+		 */
+		long key;
+		/**
+		 * Index of this entry in its cell
+		 */
+		int slot = -1;
+		/**
+		 * Next grid membership of the same object
+		 */
+		Entry next;
+
+		Entry(SpatialHashGrid grid, GameObject object) {
+			this.grid = grid;
+			this.object = object;
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package io.sly.helix.game.entities;
+
+import java.util.Arrays;
+
+import io.sly.helix.utils.math.Vector2D;
+
+/**
+ * Struct-of-arrays store for the position, direction and speed of
+ * {@link GameObject}s. Every object gets a slot, and its x, y, direction x,
+ * direction y and speed live in contiguous <code>float[]</code> columns at
+ * that slot, so bulk passes over every object walk memory linearly. Slots are
+ * kept dense: freeing one moves the last slot into it
+ * <br><br>
+ * Objects created while a store is set on {@link io.sly.helix.game.Data} use
+ * it automatically. Their {@link GameObject#getPos} and
+ * {@link GameObject#getDirection} are views over the store
+ * <br><br>
+ * Objects created during a parallel update of a {@link HelixEntityManager}
+ * only get their slot at the end of the phase, so the store never grows, and
+ * its columns are never swapped for bigger ones, while entities are being
+ * updated in parallel
+ *
+ * @author Sly
+ *
+ * @see {@link io.sly.helix.game.Data#setTransformStore}
+ */
+public class TransformStore {
+
+	private float[] x, y, dirX, dirY, speed;
+	/**
+	 * Whether each slot is moved by {@link TransformStore#integrateMovement}.
+	 * False for inactive {@link HelixEntity}s
+	 */
+	private boolean[] moving;
+	private GameObject[] owners;
+	private View[] positions, directions;
+	private int size;
+
+	/**
+	 * @param capacity - number of slots to allocate up front
+	 */
+	public TransformStore(int capacity) {
+		capacity = Math.max(capacity, 16);
+		this.x = new float[capacity];
+		this.y = new float[capacity];
+		this.dirX = new float[capacity];
+		this.dirY = new float[capacity];
+		this.speed = new float[capacity];
+		this.moving = new boolean[capacity];
+		this.owners = new GameObject[capacity];
+		this.positions = new View[capacity];
+		this.directions = new View[capacity];
+	}
+
+	/**
+	 * Give an object a slot. The slot starts with the values its detached
+	 * views hold. Must not be called while entities are being updated in parallel
+	 *
+	 * @param owner     - object the slot belongs to
+	 * @param position  - detached position view of the object
+	 * @param direction - detached direction view of the object
+	 * @param speed     - speed of the object (px/second)
+	 * @param moving    - whether {@link TransformStore#integrateMovement} moves the object
+	 * @return - the slot
+	 */
+	synchronized int attach(GameObject owner, View position, View direction, float speed, boolean moving) {
+		if (size == owners.length)
+			this.grow();
+
+		int slot = size++;
+		x[slot] = position.getX();
+		y[slot] = position.getY();
+		dirX[slot] = direction.getX();
+		dirY[slot] = direction.getY();
+		this.speed[slot] = speed;
+		this.moving[slot] = moving;
+		owners[slot] = owner;
+		positions[slot] = position;
+		directions[slot] = direction;
+		position.slot = slot;
+		direction.slot = slot;
+		return slot;
+	}
+
+	/**
+	 * Free a slot, moving the last slot into it. The views of the freed slot
+	 * are detached and keep the values they had
+	 *
+	 * @param position - position view of the slot to free
+	 */
+	synchronized void free(View position) {
+		int slot = position.slot;
+		positions[slot].detach();
+		directions[slot].detach();
+
+		int last = --size;
+		if (slot != last) {
+			x[slot] = x[last];
+			y[slot] = y[last];
+			dirX[slot] = dirX[last];
+			dirY[slot] = dirY[last];
+			speed[slot] = speed[last];
+			moving[slot] = moving[last];
+			owners[slot] = owners[last];
+			positions[slot] = positions[last];
+			directions[slot] = directions[last];
+			positions[slot].slot = slot;
+			directions[slot].slot = slot;
+		}
+		owners[last] = null;
+		positions[last] = null;
+		directions[last] = null;
+	}
+
+	/**
+	 * Move every object along its direction at its speed in one linear sweep.
+	 * Inactive {@link HelixEntity}s and objects with no speed or direction are
+	 * skipped. Objects that moved are marked dirty, and re-bucketed if they
+	 * belong to a {@link SpatialHashGrid}. Call it between updates, not from
+	 * inside one
+	 *
+	 * @param delta - time to integrate over (seconds)
+	 *
+	 * @see {@link GameObject#setSpeed}
+	 */
+	public void integrateMovement(float delta) {
+		for (int i = 0; i < size; i++) {
+			float step = speed[i] * delta;
+			if (!moving[i] || step == 0 || (dirX[i] == 0 && dirY[i] == 0))
+				continue;
+
+			owners[i].beforeChange();
+			x[i] += dirX[i] * step;
+			y[i] += dirY[i] * step;
+			owners[i].positionChanged();
+		}
+	}
+
+	// Getters and Setters
+
+	/**
+	 * @return - number of slots in use
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return - x column. Only the first {@link TransformStore#size} entries are used
+	 */
+	public float[] getX() {
+		return x;
+	}
+
+	/**
+	 * @return - y column. Only the first {@link TransformStore#size} entries are used
+	 */
+	public float[] getY() {
+		return y;
+	}
+
+	/**
+	 * @return - direction x column. Only the first {@link TransformStore#size} entries are used
+	 */
+	public float[] getDirX() {
+		return dirX;
+	}
+
+	/**
+	 * @return - direction y column. Only the first {@link TransformStore#size} entries are used
+	 */
+	public float[] getDirY() {
+		return dirY;
+	}
+
+	/**
+	 * @return - speed column (px/second). Only the first {@link TransformStore#size} entries are used
+	 */
+	public float[] getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * @return - object that owns a slot
+	 */
+	public GameObject getOwner(int slot) {
+		return owners[slot];
+	}
+
+	/**
+	 * Only called from {@link TransformStore#attach}, holding the lock, and
+	 * never during an update, so no write to the old columns can be lost
+	 */
+	private void grow() {
+		int capacity = owners.length * 2;
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		dirX = Arrays.copyOf(dirX, capacity);
+		dirY = Arrays.copyOf(dirY, capacity);
+		speed = Arrays.copyOf(speed, capacity);
+		moving = Arrays.copyOf(moving, capacity);
+		owners = Arrays.copyOf(owners, capacity);
+		positions = Arrays.copyOf(positions, capacity);
+		directions = Arrays.copyOf(directions, capacity);
+	}
+
+	float getSpeed(View position) {
+		return speed[position.slot];
+	}
+
+	void setSpeed(View position, float speed) {
+		this.speed[position.slot] = speed;
+	}
+
+	void setMoving(View position, boolean moving) {
+		this.moving[position.slot] = moving;
+	}
+
+	/**
+	 * {@link Vector2D} that reads and writes a slot of the store. Once detached,
+	 * it falls back to holding its own coordinates
+	 */
+	static final class View extends Vector2D {
+		private final TransformStore store;
+		private final boolean direction;
+		int slot;
+
+		View(TransformStore store, int slot, boolean direction) {
+			super(0, 0);
+			this.store = store;
+			this.slot = slot;
+			this.direction = direction;
+		}
+
+		/**
+		 * Copy the current values out of the store and stop reading from it
+		 */
+		void detach() {
+			super.setX(this.getX());
+			super.setY(this.getY());
+			slot = -1;
+		}
+
+		@Override
+		public float getX() {
+			if (slot < 0)
+				return super.getX();
+			return direction ? store.dirX[slot] : store.x[slot];
+		}
+
+		@Override
+		public float getY() {
+			if (slot < 0)
+				return super.getY();
+			return direction ? store.dirY[slot] : store.y[slot];
+		}
+
+		@Override
+		public void setX(float x) {
+			if (slot < 0)
+				super.setX(x);
+			else if (direction)
+				store.dirX[slot] = x;
+			else
+				store.x[slot] = x;
+		}
+
+		@Override
+		public void setY(float y) {
+			if (slot < 0)
+				super.setY(y);
+			else if (direction)
+				store.dirY[slot] = y;
+			else
+				store.y[slot] = y;
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package io.sly.helix.game.entities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registry of {@link GameObject}s bucketed by every class and interface they
+ * are an instance of, so looking objects up by type is a map lookup instead of
+ * a scan
+ *
+ * @author Sly
+ *
+ * @see {@link io.sly.helix.gfx.Screen}, {@link io.sly.helix.game.Data}
+ */
+public class TypeIndex {
+
+	/**
+	 * Every type (superclasses and interfaces) each concrete class is registered under
+	 */
+	private static final ClassValue<Class<?>[]> HIERARCHY = new ClassValue<Class<?>[]>() {
+		@Override
+		protected Class<?>[] computeValue(Class<?> type) {
+			Set<Class<?>> types = new LinkedHashSet<>();
+			for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+				types.add(c);
+				addInterfaces(c, types);
+			}
+			return types.toArray(new Class<?>[types.size()]);
+		}
+	};
+
+	/**
+	 * Objects registered under each type
+	 */
+	private final Map<Class<?>, Bucket> buckets = new HashMap<>();
+
+	/**
+	 * Create an empty index
+	 */
+	public TypeIndex() {
+		// Every object is registered under GameObject, so the view of all of them is always live
+		this.bucket(GameObject.class);
+	}
+
+	/**
+	 * Register an object under its class, superclasses and interfaces. During
+	 * a parallel update of a {@link HelixEntityManager} this is deferred until
+	 * the end of the phase
+	 *
+	 * @param object - object to add
+	 * @return - false if the object is null or already in an index
+	 */
+	public boolean add(GameObject object) {
+		if (object == null || object.typeIndex != null)
+			return false;
+
+		CommandBuffer buffer = CommandBuffer.current();
+		if (buffer != null) {
+			buffer.add(this, object);
+			return true;
+		}
+
+		Class<?>[] types = HIERARCHY.get(object.getClass());
+		int[] slots = new int[types.length];
+		for (int i = 0; i < types.length; i++) {
+			Bucket bucket = this.bucket(types[i]);
+			slots[i] = bucket.objects.size();
+			bucket.objects.add(object);
+		}
+
+		object.typeIndex = this;
+		object.typeSlots = slots;
+		return true;
+	}
+
+	/**
+	 * Remove an object from every bucket it is registered in. Each bucket is
+	 * swap-removed, so this does not depend on how many objects are indexed.
+	 * Deferred during a parallel update, like {@link TypeIndex#add}
+	 *
+	 * @param object - object to remove
+	 * @return - false if the object is not in this index
+	 */
+	public boolean remove(GameObject object) {
+		if (object == null || object.typeIndex != this)
+			return false;
+
+		CommandBuffer buffer = CommandBuffer.current();
+		if (buffer != null) {
+			buffer.remove(this, object);
+			return true;
+		}
+
+		Class<?>[] types = HIERARCHY.get(object.getClass());
+		for (int i = 0; i < types.length; i++) {
+			ArrayList<GameObject> objects = buckets.get(types[i]).objects;
+			int slot = object.typeSlots[i];
+
+			GameObject last = objects.remove(objects.size() - 1);
+			if (last != object) {
+				objects.set(slot, last);
+				last.typeSlots[indexOf(HIERARCHY.get(last.getClass()), types[i])] = slot;
+			}
+		}
+
+		object.typeIndex = null;
+		object.typeSlots = null;
+		return true;
+	}
+
+	/**
+	 * Find an instance of some type
+	 *
+	 * @param searchClass - Type of class to search for
+	 * @return - an instance of searchClass or null if none is registered
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T find(Class<T> searchClass) {
+		Bucket bucket = buckets.get(searchClass);
+		if (bucket == null || bucket.objects.isEmpty())
+			return null;
+		return (T) bucket.objects.get(0);
+	}
+
+	/**
+	 * Get every instance of some type. The returned list is a read-only view
+	 * that stays up to date as objects are added and removed, so it can be kept
+	 * and re-used instead of being fetched every frame. Until an instance of
+	 * the type has been added, it is an empty list that does not update
+	 *
+	 * @param searchClass - Type of class to search for
+	 * @return - a live, read-only view of every instance of searchClass
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> findAll(Class<T> searchClass) {
+		// Lookups never add a bucket, as they can run on several threads at once during a parallel update
+		Bucket bucket = buckets.get(searchClass);
+		return bucket != null ? (List<T>) bucket.view : Collections.<T>emptyList();
+	}
+
+	/**
+	 * Whether or not an object is in this index
+	 *
+	 * @param object - object to look for
+	 */
+	public boolean contains(GameObject object) {
+		return object != null && object.typeIndex == this;
+	}
+
+	/**
+	 * Number of instances of some type
+	 *
+	 * @param searchClass - Type of class to count
+	 */
+	public int count(Class<?> searchClass) {
+		Bucket bucket = buckets.get(searchClass);
+		return bucket == null ? 0 : bucket.objects.size();
+	}
+
+	// Helpers
+
+	private Bucket bucket(Class<?> type) {
+		Bucket bucket = buckets.get(type);
+		if (bucket == null) {
+			bucket = new Bucket();
+			buckets.put(type, bucket);
+		}
+		return bucket;
+	}
+
+	private static int indexOf(Class<?>[] types, Class<?> type) {
+		for (int i = 0; i < types.length; i++) {
+			if (types[i] == type)
+				return i;
+		}
+		return -1;
+	}
+
+	private static void addInterfaces(Class<?> type, Set<Class<?>> types) {
+		for (Class<?> intf : type.getInterfaces()) {
+			if (types.add(intf))
+				addInterfaces(intf, types);
+		}
+	}
+
+	/**
+	 * Objects registered under a single type, along with a cached read-only view
+	 */
+	private static final class Bucket {
+		final ArrayList<GameObject> objects = new ArrayList<>();
+		final List<GameObject> view = Collections.unmodifiableList(objects);
+	}
+}
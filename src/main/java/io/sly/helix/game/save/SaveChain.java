@@ -0,0 +1,379 @@
+package io.sly.helix.game.save;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.logging.Logger;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.IntSet;
+
+import io.sly.helix.Constants;
+import io.sly.helix.game.Data;
+import io.sly.helix.game.entities.GameObject;
+import io.sly.helix.gfx.Screen;
+import io.sly.helix.utils.io.BinaryCursor;
+import io.sly.helix.utils.io.BinaryWriter;
+import io.sly.helix.utils.io.Journal;
+import io.sly.helix.utils.io.Serializable;
+
+/**
+ * Incremental saves: a full {@link WorldSnapshot} as a base, followed by
+ * deltas holding only the objects that changed since the save before
+ * <br><br>
+ * Each {@link SaveChain#save} appends a delta to a {@link Journal} next to
+ * the base (the base's path plus ".d") with a record for every object that is
+ * {@link GameObject#isDirty}, and the {@link GameObject#getSaveKey} of every
+ * object saved before that is gone. {@link SaveChain#load} loads the base,
+ * then replays the deltas on top of it in order. Once there are
+ * {@link SaveChain#getMaxDeltas} deltas, the next save writes a new base
+ * instead, so loading never has to replay more than that many
+ * <br><br>
+ * Each delta is one journal record (big-endian):
+ * <pre>
+ * short  {@link WorldSnapshot#FORMAT_VERSION}
+ * long   {@link WorldSnapshot#getId} of the base
+ * int    number of the delta since the base, from 1
+ * ...    type table, as in a {@link WorldSnapshot}
+ * int    number of changed global objects, then a record for each
+ * int    number of changed screen objects, then a record for each
+ * int    number of removed objects, then the save key of each
+ * </pre>
+ * Bases replace the old one atomically, so a crash leaves either the old
+ * base or the new one. Deltas of another base, left behind by a crash
+ * between writing a new base and emptying the journal, are ignored. The
+ * journal syncs deltas in the background, so a crash loses at most the
+ * last few; {@link SaveChain#commit} waits for them
+ * <br><br>
+ * Saves are taken on the calling thread, which must be the game thread
+ * between ticks. Call {@link SaveChain#close} when done
+ *
+ * @author Sly
+ *
+ * @see {@link GameObject#markDirty}
+ */
+public final class SaveChain implements Closeable {
+	private static final Logger log = Logger.getLogger(SaveChain.class);
+
+	/**
+	 * Default number of deltas written before the next save writes a new base
+	 */
+	public static final int DEFAULT_MAX_DELTAS = 16;
+
+	private final Data data;
+	private final String path;
+	private final String deltaPath;
+
+	private int maxDeltas = DEFAULT_MAX_DELTAS;
+	private Journal deltas;
+
+	/**
+	 * Id of the base snapshot, 0 until one has been written or loaded
+	 */
+	private long baseId;
+	private int deltaCount;
+
+	/**
+	 * Save keys of every object in the last save, to tell which were removed since
+	 */
+	private IntSet savedKeys = new IntSet();
+
+	/**
+	 * @param data - data holding the global objects and the current screen
+	 * @param path - path of the base snapshot, relative to the absolute directory
+	 *
+	 * @see {@link Constants#ABS_PATH}
+	 */
+	public SaveChain(Data data, String path) {
+		this.data = data;
+		this.path = path;
+		this.deltaPath = path + ".d";
+	}
+
+	/**
+	 * Save the objects of the current screen and the global objects. Writes a
+	 * delta of what changed since the last save, or a new base if there is
+	 * none yet or there are already {@link SaveChain#getMaxDeltas} deltas
+	 * @return - number of records written
+	 */
+	public int save() {
+		if (baseId == 0 || deltaCount >= maxDeltas)
+			return this.compact();
+		return this.writeDelta();
+	}
+
+	/**
+	 * Write a new base of every object and drop the deltas
+	 * @return - number of objects saved
+	 */
+	public int compact() {
+		Screen screen = data.getCurrentScreen();
+		final List<GameObject> globals = data.getGlobalObjects();
+		final List<GameObject> locals = screen.getObjects();
+
+		final long id = WorldSnapshot.newId();
+		final int[] count = new int[1];
+		Journal.replaceAtomically(path, false, new Journal.Contents() {
+			@Override
+			public void write(BinaryWriter out) {
+				count[0] = WorldSnapshot.write(out, locals, globals, id);
+			}
+		});
+		// Deltas of the old base are ignored from here on, even if this fails
+		this.getDeltas().reset();
+
+		baseId = id;
+		deltaCount = 0;
+		savedKeys = new IntSet(count[0]);
+		this.markSaved(globals);
+		this.markSaved(locals);
+		return count[0];
+	}
+
+	private void markSaved(List<GameObject> objects) {
+		for (GameObject object : objects) {
+			if (!(object instanceof Serializable))
+				continue;
+			object.clearDirty();
+			savedKeys.add(object.getSaveKey());
+		}
+	}
+
+	/**
+	 * Append a delta of what changed since the last save
+	 * @return - number of records written, 0 if nothing changed
+	 */
+	private int writeDelta() {
+		Screen screen = data.getCurrentScreen();
+		List<GameObject> globals = new ArrayList<>();
+		List<GameObject> locals = new ArrayList<>();
+		IntSet keys = new IntSet(savedKeys.size);
+
+		Map<Class<?>, Integer> types = new IdentityHashMap<>();
+		List<Class<?>> typeList = new ArrayList<>();
+		IntArray versions = new IntArray();
+		this.collectChanged(data.getGlobalObjects(), globals, keys, types, typeList, versions);
+		this.collectChanged(screen.getObjects(), locals, keys, types, typeList, versions);
+
+		IntArray removed = new IntArray();
+		IntSet.IntSetIterator saved = savedKeys.iterator();
+		while (saved.hasNext) {
+			int key = saved.next();
+			if (!keys.contains(key))
+				removed.add(key);
+		}
+
+		if (globals.isEmpty() && locals.isEmpty() && removed.size == 0)
+			return 0;
+
+		BinaryWriter body = new BinaryWriter();
+		body.writeShort(WorldSnapshot.FORMAT_VERSION);
+		body.writeLong(baseId);
+		body.writeInt(deltaCount + 1);
+		WorldSnapshot.writeTypes(body, typeList, versions);
+		BinaryWriter record = new BinaryWriter(256);
+		body.writeInt(globals.size());
+		WorldSnapshot.writeRecords(body, record, globals, types);
+		body.writeInt(locals.size());
+		WorldSnapshot.writeRecords(body, record, locals, types);
+		body.writeInt(removed.size);
+		for (int i = 0; i < removed.size; i++) {
+			body.writeInt(removed.get(i));
+		}
+
+		this.getDeltas().append(body);
+
+		deltaCount++;
+		savedKeys = keys;
+		for (GameObject object : globals) {
+			object.clearDirty();
+		}
+		for (GameObject object : locals) {
+			object.clearDirty();
+		}
+		return globals.size() + locals.size() + removed.size;
+	}
+
+	/**
+	 * Find the Serializable objects that changed since the last save, noting
+	 * the save key of every Serializable object
+	 */
+	private void collectChanged(List<GameObject> objects, List<GameObject> changed, IntSet keys,
+			Map<Class<?>, Integer> types, List<Class<?>> typeList, IntArray versions) {
+		for (GameObject object : objects) {
+			if (!(object instanceof Serializable))
+				continue;
+			int key = object.getSaveKey();
+			keys.add(key);
+			if (object.isDirty() || !savedKeys.contains(key)) {
+				changed.add(object);
+				WorldSnapshot.indexType(object, types, typeList, versions);
+			}
+		}
+	}
+
+	/**
+	 * Load the base into the current screen and the global objects, then
+	 * replay every delta written on top of it. Further saves carry on the chain
+	 * @return - number of deltas replayed
+	 */
+	public int load() {
+		final Screen screen = data.getCurrentScreen();
+		WorldSnapshot base = WorldSnapshot.load(data, screen, path);
+
+		final IntMap<GameObject> objects = new IntMap<>();
+		for (GameObject object : base.getGlobalObjects()) {
+			objects.put(object.getSaveKey(), object);
+		}
+		for (GameObject object : base.getScreenObjects()) {
+			objects.put(object.getSaveKey(), object);
+		}
+
+		baseId = base.getId();
+		deltaCount = 0;
+		final int[] ignored = new int[1];
+		if (baseId != 0) {
+			this.getDeltas().replay(new Journal.RecordHandler() {
+				@Override
+				public void record(BinaryCursor record, int index) {
+					if (!replayDelta(record, screen, objects))
+						ignored[0]++;
+				}
+			});
+		}
+
+		savedKeys = new IntSet(objects.size);
+		for (IntMap.Entry<GameObject> entry : objects.entries()) {
+			entry.value.clearDirty();
+			savedKeys.add(entry.key);
+		}
+
+		if (baseId == 0) {
+			log.warn(path + " is older than incremental saves, the next save will write a new base");
+		} else if (ignored[0] > 0) {
+			log.warn("Ignored " + ignored[0] + " deltas of another save in " + deltaPath + ", the next save will write a new base");
+			// Get rid of them before appending more
+			deltaCount = Math.max(deltaCount, maxDeltas);
+		}
+		return deltaCount;
+	}
+
+	/**
+	 * Replay a delta, if it is the next one of this chain's base
+	 * @return - whether or not the delta was replayed
+	 */
+	private boolean replayDelta(BinaryCursor in, Screen screen, IntMap<GameObject> objects) {
+		int formatVersion = in.readShort() & 0xFFFF;
+		long id = in.readLong();
+		int sequence = in.readInt();
+		if (id != baseId || formatVersion > WorldSnapshot.FORMAT_VERSION || sequence != deltaCount + 1)
+			return false;
+
+		int[] versions = new int[in.readShort() & 0xFFFF];
+		Class<? extends GameObject>[] types = WorldSnapshot.readTypes(data, in, versions);
+
+		this.replayRecords(in, formatVersion, types, versions, objects, null);
+		this.replayRecords(in, formatVersion, types, versions, objects, screen);
+
+		int removedCount = in.readInt();
+		for (int i = 0; i < removedCount; i++) {
+			GameObject object = objects.remove(in.readInt());
+			if (object == null)
+				continue;
+			data.removeObject(object);
+			object.dispose();
+			free(data, object);
+		}
+		deltaCount++;
+		return true;
+	}
+
+	/**
+	 * Replay changed objects, creating the ones that are not loaded yet
+	 * @param screen - screen to add new objects to, null to add them to the global objects
+	 */
+	private void replayRecords(BinaryCursor in, int formatVersion, Class<? extends GameObject>[] types,
+			int[] versions, IntMap<GameObject> objects, Screen screen) {
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			GameObject object = WorldSnapshot.readRecord(data, in, formatVersion, types, versions, objects);
+			if (object == null)
+				continue;
+
+			GameObject previous = objects.put(object.getSaveKey(), object);
+			if (previous == object)
+				continue;
+			if (previous != null) {
+				// Saved again as another type
+				data.removeObject(previous);
+				previous.dispose();
+				free(data, previous);
+			}
+			if (screen != null)
+				screen.addObject(object);
+			else
+				data.addObject(object, true);
+		}
+	}
+
+	/**
+	 * Wait until every delta saved so far is synced to disk
+	 */
+	public void commit() {
+		if (deltas != null)
+			deltas.commit();
+	}
+
+	/**
+	 * Sync any deltas not synced yet and close the journal. Saving or loading
+	 * again opens it again
+	 */
+	@Override
+	public void close() {
+		if (deltas == null)
+			return;
+		deltas.close();
+		deltas = null;
+	}
+
+	private Journal getDeltas() {
+		if (deltas == null)
+			deltas = new Journal(deltaPath);
+		return deltas;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends GameObject> void free(Data data, T object) {
+		data.getPool((Class<T>) object.getClass()).free(object);
+	}
+
+	// Getters and Setters
+
+	/**
+	 * @return - number of deltas written on top of the current base
+	 */
+	public int getDeltaCount() {
+		return deltaCount;
+	}
+
+	public int getMaxDeltas() {
+		return maxDeltas;
+	}
+
+	/**
+	 * Set how many deltas to write before writing a new base. More deltas
+	 * means fewer full saves, but more to replay when loading
+	 * @param maxDeltas - deltas per base, 0 to always write a full base
+	 */
+	public void setMaxDeltas(int maxDeltas) {
+		this.maxDeltas = maxDeltas;
+	}
+
+	public String getPath() {
+		return path;
+	}
+}
@@ -0,0 +1,462 @@
+package io.sly.helix.game.save;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.jboss.logging.Logger;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntMap;
+
+import io.sly.helix.Constants;
+import io.sly.helix.exception.HelixRuntimeException;
+import io.sly.helix.game.Data;
+import io.sly.helix.game.entities.GameObject;
+import io.sly.helix.gfx.Screen;
+import io.sly.helix.utils.io.BinaryCursor;
+import io.sly.helix.utils.io.BinaryWriter;
+import io.sly.helix.utils.io.Serializable;
+
+/**
+ * Save and load the {@link GameObject}s of a {@link Screen} and the global
+ * objects of {@link Data}. Only objects that implement {@link Serializable}
+ * are saved
+ * <br><br>
+ * Layout (big-endian):
+ * <pre>
+ * int    {@link WorldSnapshot#MAGIC}
+ * short  {@link WorldSnapshot#FORMAT_VERSION}
+ * long   id of the snapshot (since format 2)
+ * short  number of types, then for each type:
+ *          short  length of the class name, then the name (UTF-8)
+ *          int    {@link Serializable#getSchemaVersion} of the class
+ * int    number of global objects, then a record for each
+ * int    number of screen objects, then a record for each
+ *
+ * record: short  index of the object's type in the type table
+ *         int    length of the rest of the record
+ *         int    {@link GameObject#getSaveKey} (since format 2)
+ *         float  x, y, direction x, direction y
+ *         ...    whatever {@link Serializable#write} wrote
+ * </pre>
+ * Because every record carries its length, records of classes that no longer
+ * exist are skipped, and so is any data at the end of a record that a class's
+ * {@link Serializable#parse} does not know about yet
+ *
+ * @author Sly
+ *
+ * @see {@link Data#saveSnapshot}, {@link Data#loadSnapshot}, {@link SaveChain}
+ */
+public final class WorldSnapshot {
+	private static final Logger log = Logger.getLogger(WorldSnapshot.class);
+
+	/**
+	 * First 4 bytes of every snapshot ("HLXS")
+	 */
+	public static final int MAGIC = 0x484C5853;
+	/**
+	 * Version of the layout written. Snapshots of newer versions are refused
+	 */
+	public static final int FORMAT_VERSION = 2;
+
+	/**
+	 * Bytes of engine state at the start of every record, in format 1 and since format 2
+	 */
+	private static final int RECORD_HEADER_V1 = 4 * Float.BYTES;
+	private static final int RECORD_HEADER = Integer.BYTES + RECORD_HEADER_V1;
+
+	private final int formatVersion;
+	private final long id;
+	private final List<GameObject> globalObjects;
+	private final List<GameObject> screenObjects;
+	private int skipped;
+
+	private WorldSnapshot(int formatVersion, long id, int globalCount) {
+		this.formatVersion = formatVersion;
+		this.id = id;
+		this.globalObjects = new ArrayList<>(globalCount);
+		this.screenObjects = new ArrayList<>();
+	}
+
+	/**
+	 * Save a screen's objects and the global objects to a file
+	 * @param data - data holding the global objects
+	 * @param screen - screen to save the objects of
+	 * @param path - path to save to, relative to the absolute directory
+	 * @return - number of objects saved
+	 *
+	 * @see {@link Constants#ABS_PATH}
+	 */
+	public static int save(Data data, Screen screen, String path) {
+		return save(data, screen, path, false);
+	}
+
+	/**
+	 * Save a screen's objects and the global objects to a file
+	 * @param data - data holding the global objects
+	 * @param screen - screen to save the objects of
+	 * @param path - path to save to, relative to the absolute directory
+	 * @param compressed - whether to block-compress the file. It is loaded the same way either way
+	 * @return - number of objects saved
+	 *
+	 * @see {@link Constants#ABS_PATH}
+	 */
+	public static int save(Data data, Screen screen, String path, boolean compressed) {
+		try (BinaryWriter out = new BinaryWriter(path, true, BinaryWriter.DEFAULT_BUFFER_SIZE, false, compressed)) {
+			return write(out, screen.getObjects(), data.getGlobalObjects());
+		}
+	}
+
+	/**
+	 * Write a snapshot of some objects
+	 * @param out - writer to write the snapshot to
+	 * @param screenObjects - objects of the screen
+	 * @param globalObjects - objects global between screens
+	 * @return - number of objects written. Objects that are not {@link Serializable} are left out
+	 */
+	public static int write(BinaryWriter out, Collection<? extends GameObject> screenObjects,
+			Collection<? extends GameObject> globalObjects) {
+		return write(out, screenObjects, globalObjects, newId());
+	}
+
+	/**
+	 * Write a snapshot of some objects
+	 * @param out - writer to write the snapshot to
+	 * @param screenObjects - objects of the screen
+	 * @param globalObjects - objects global between screens
+	 * @param id - id to tell the snapshot apart from others, such as by {@link SaveChain}
+	 * @return - number of objects written. Objects that are not {@link Serializable} are left out
+	 */
+	public static int write(BinaryWriter out, Collection<? extends GameObject> screenObjects,
+			Collection<? extends GameObject> globalObjects, long id) {
+		Map<Class<?>, Integer> types = new IdentityHashMap<>();
+		List<Class<?>> typeList = new ArrayList<>();
+		IntArray versions = new IntArray();
+		int globalCount = indexTypes(globalObjects, types, typeList, versions);
+		int screenCount = indexTypes(screenObjects, types, typeList, versions);
+
+		writeHeader(out, id, typeList, versions);
+
+		BinaryWriter record = new BinaryWriter(256);
+		out.writeInt(globalCount);
+		writeRecords(out, record, globalObjects, types);
+		out.writeInt(screenCount);
+		writeRecords(out, record, screenObjects, types);
+
+		int skipped = globalObjects.size() + screenObjects.size() - globalCount - screenCount;
+		if (skipped > 0)
+			log.debug("Left " + skipped + " objects that aren't Serializable out of the snapshot");
+		return globalCount + screenCount;
+	}
+
+	/**
+	 * @return - a random, non-zero snapshot id
+	 */
+	static long newId() {
+		long id;
+		do {
+			id = ThreadLocalRandom.current().nextLong();
+		} while (id == 0);
+		return id;
+	}
+
+	/**
+	 * Give every Serializable type in a collection an index
+	 * @return - number of Serializable objects in the collection
+	 */
+	static int indexTypes(Collection<? extends GameObject> objects, Map<Class<?>, Integer> types,
+			List<Class<?>> typeList, IntArray versions) {
+		int count = 0;
+		for (GameObject object : objects) {
+			if (!(object instanceof Serializable))
+				continue;
+			count++;
+			indexType(object, types, typeList, versions);
+		}
+		return count;
+	}
+
+	/**
+	 * Get the index of an object's type in the type table, adding the type
+	 * and its schema version if it is not in there yet
+	 * @return - index of the type
+	 */
+	static int indexType(GameObject object, Map<Class<?>, Integer> types, List<Class<?>> typeList,
+			IntArray versions) {
+		Integer index = types.get(object.getClass());
+		if (index != null)
+			return index;
+
+		index = typeList.size();
+		types.put(object.getClass(), index);
+		typeList.add(object.getClass());
+		versions.add(((Serializable) object).getSchemaVersion());
+		return index;
+	}
+
+	/**
+	 * Write everything before the global objects
+	 * @param id - id of the snapshot
+	 * @param typeList - types in the order of their indices
+	 * @param versions - schema version of each type
+	 */
+	static void writeHeader(BinaryWriter out, long id, List<Class<?>> typeList, IntArray versions) {
+		out.writeInt(MAGIC);
+		out.writeShort(FORMAT_VERSION);
+		out.writeLong(id);
+		writeTypes(out, typeList, versions);
+	}
+
+	/**
+	 * Write a type table
+	 * @param typeList - types in the order of their indices
+	 * @param versions - schema version of each type
+	 */
+	static void writeTypes(BinaryWriter out, List<Class<?>> typeList, IntArray versions) {
+		if (typeList.size() > 0xFFFF)
+			throw new HelixRuntimeException(Constants.ERR_RES_WRITE_FAIL, "Too many types to save: " + typeList.size());
+
+		out.writeShort(typeList.size());
+		for (int i = 0; i < typeList.size(); i++) {
+			byte[] name = typeList.get(i).getName().getBytes(StandardCharsets.UTF_8);
+			out.writeShort(name.length);
+			out.write(name);
+			out.writeInt(versions.get(i));
+		}
+	}
+
+	/**
+	 * Write the start of a record, up to where the object's own data goes
+	 * @param type - index of the object's type
+	 * @param key - {@link GameObject#getSaveKey} of the object
+	 * @param dataLength - length of the object's own data
+	 */
+	static void writeRecordHeader(BinaryWriter out, int type, int key, int dataLength, float x, float y,
+			float dirX, float dirY) {
+		out.writeShort(type);
+		out.writeInt(RECORD_HEADER + dataLength);
+		out.writeInt(key);
+		out.writeFloat(x);
+		out.writeFloat(y);
+		out.writeFloat(dirX);
+		out.writeFloat(dirY);
+	}
+
+	/**
+	 * Write a record for every Serializable object in a collection
+	 * @param record - memory writer to write each object's data into first
+	 * @param types - index of each type in the type table
+	 */
+	static void writeRecords(BinaryWriter out, BinaryWriter record, Collection<? extends GameObject> objects,
+			Map<Class<?>, Integer> types) {
+		for (GameObject object : objects) {
+			if (!(object instanceof Serializable))
+				continue;
+
+			// Written to memory first, so the record can be prefixed with its length
+			record.reset();
+			((Serializable) object).write(record);
+
+			writeRecordHeader(out, types.get(object.getClass()), object.getSaveKey(), (int) record.size(),
+					object.getPos().getX(), object.getPos().getY(), object.getDirection().getX(),
+					object.getDirection().getY());
+			record.writeTo(out);
+		}
+	}
+
+	/**
+	 * Load a snapshot from a file, adding its objects to a screen and the
+	 * global objects
+	 * @param data - data to create the objects with and add the global objects to
+	 * @param screen - screen to add the screen objects to
+	 * @param path - path to load from, relative to the absolute directory
+	 * @return - the snapshot loaded
+	 *
+	 * @see {@link Constants#ABS_PATH}
+	 */
+	public static WorldSnapshot load(Data data, Screen screen, String path) {
+		try (BinaryCursor in = new BinaryCursor(path)) {
+			return read(data, screen, in);
+		}
+	}
+
+	/**
+	 * Read a snapshot. Objects are created through {@link Data#obtain}, so
+	 * their classes need a <code>(Data, Vector2D)</code> constructor
+	 * @param data - data to create the objects with and add the global objects to
+	 * @param screen - screen to add the screen objects to. If null, screen
+	 * objects are only returned through {@link WorldSnapshot#getScreenObjects}
+	 * @param in - cursor at the start of the snapshot
+	 * @return - the snapshot read
+	 * @throws HelixRuntimeException if the data is not a snapshot, or is of a newer format
+	 */
+	public static WorldSnapshot read(Data data, Screen screen, BinaryCursor in) {
+		if (in.readInt() != MAGIC)
+			throw new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL, "Not a world snapshot: " + in.filePath);
+		int formatVersion = in.readShort() & 0xFFFF;
+		if (formatVersion > FORMAT_VERSION)
+			throw new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL,
+					"World snapshot " + in.filePath + " is format " + formatVersion + ", newer than " + FORMAT_VERSION);
+		long id = formatVersion >= 2 ? in.readLong() : 0;
+
+		int typeCount = in.readShort() & 0xFFFF;
+		int[] versions = new int[typeCount];
+		Class<? extends GameObject>[] types = readTypes(data, in, versions);
+
+		int globalCount = in.readInt();
+		WorldSnapshot snapshot = new WorldSnapshot(formatVersion, id, globalCount);
+		snapshot.readRecords(data, in, types, versions, globalCount, snapshot.globalObjects);
+		snapshot.readRecords(data, in, types, versions, in.readInt(), snapshot.screenObjects);
+
+		for (GameObject object : snapshot.globalObjects) {
+			data.addObject(object, true);
+		}
+		if (screen != null) {
+			for (GameObject object : snapshot.screenObjects) {
+				screen.addObject(object);
+			}
+		}
+
+		if (snapshot.skipped > 0)
+			log.warn("Skipped " + snapshot.skipped + " objects of unknown types in " + in.filePath);
+		return snapshot;
+	}
+
+	/**
+	 * Read the type table and look up its classes. Names that are not
+	 * loadable {@link GameObject}s come back as null
+	 * @param versions - array to store the schema version of each type in
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	static Class<? extends GameObject>[] readTypes(Data data, BinaryCursor in, int[] versions) {
+		Class<? extends GameObject>[] types = new Class[versions.length];
+		for (int i = 0; i < versions.length; i++) {
+			String name = new String(in.readBytes(in.readShort() & 0xFFFF), StandardCharsets.UTF_8);
+			types[i] = lookUp(data, name);
+			versions[i] = in.readInt();
+		}
+		return types;
+	}
+
+	private void readRecords(Data data, BinaryCursor in, Class<? extends GameObject>[] types, int[] versions,
+			int count, List<GameObject> out) {
+		for (int i = 0; i < count; i++) {
+			GameObject object = readRecord(data, in, formatVersion, types, versions, null);
+			if (object != null)
+				out.add(object);
+			else
+				skipped++;
+		}
+	}
+
+	/**
+	 * Read one record
+	 * @param formatVersion - format the record was written in
+	 * @param existing - live objects by save key. A record of one of them is
+	 * read into it rather than into a new object. May be null
+	 * @return - the object read, or null if its record was skipped
+	 */
+	static GameObject readRecord(Data data, BinaryCursor in, int formatVersion, Class<? extends GameObject>[] types,
+			int[] versions, IntMap<GameObject> existing) {
+		int type = in.readShort() & 0xFFFF;
+		int length = in.readInt();
+		long end = in.getPosition() + length;
+		// Streams of unknown size fail on the read or skip that runs off their end instead
+		if (length < 0 || (in.size() >= 0 && end > in.size()))
+			throw new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL,
+					"Bad record length " + length + " in " + in.filePath);
+
+		Class<? extends GameObject> cls = type < types.length ? types[type] : null;
+		if (cls == null || length < (formatVersion >= 2 ? RECORD_HEADER : RECORD_HEADER_V1)) {
+			in.skip(length);
+			return null;
+		}
+
+		int key = formatVersion >= 2 ? in.readInt() : 0;
+		float x = in.readFloat();
+		float y = in.readFloat();
+
+		GameObject object = existing != null && key != 0 ? existing.get(key) : null;
+		if (object != null && object.getClass() == cls) {
+			object.setPos(x, y);
+		} else {
+			object = data.obtain(cls, x, y);
+			if (key != 0)
+				object.setSaveKey(key);
+		}
+		object.setDirection(in.readFloat(), in.readFloat());
+		((Serializable) object).parse(in, versions[type]);
+
+		long position = in.getPosition();
+		if (position > end)
+			throw new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL,
+					cls.getName() + " read past the end of its record in " + in.filePath);
+		// Fields added by a newer version of the class
+		in.skip(end - position);
+		return object;
+	}
+
+	/**
+	 * Find a saved class that can be created through {@link Data#obtain}
+	 * @return - the class, or null if there is no such class
+	 */
+	private static Class<? extends GameObject> lookUp(Data data, String name) {
+		try {
+			Class<?> type = Class.forName(name, false, WorldSnapshot.class.getClassLoader());
+			if (!GameObject.class.isAssignableFrom(type) || !Serializable.class.isAssignableFrom(type)) {
+				log.warn(name + " in snapshot is no longer a Serializable GameObject");
+				return null;
+			}
+			Class<? extends GameObject> objectType = type.asSubclass(GameObject.class);
+			data.getPool(objectType);
+			return objectType;
+		} catch (ClassNotFoundException e) {
+			log.warn("Unknown type in snapshot: " + name);
+		} catch (HelixRuntimeException e) {
+			log.warn("Can't create " + name + " from snapshot: " + e.getMessage());
+		}
+		return null;
+	}
+
+	// Getters and Setters
+
+	/**
+	 * @return - {@link WorldSnapshot#FORMAT_VERSION} the snapshot was written with
+	 */
+	public int getFormatVersion() {
+		return formatVersion;
+	}
+
+	/**
+	 * @return - id the snapshot was written with, 0 for format 1 snapshots
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * @return - the global objects read
+	 */
+	public List<GameObject> getGlobalObjects() {
+		return globalObjects;
+	}
+
+	/**
+	 * @return - the screen objects read
+	 */
+	public List<GameObject> getScreenObjects() {
+		return screenObjects;
+	}
+
+	/**
+	 * @return - number of records skipped because their type is unknown
+	 */
+	public int getSkipped() {
+		return skipped;
+	}
+}
@@ -7,11 +7,16 @@ import org.jboss.logging.Logger;
 
 import com.badlogic.gdx.ScreenAdapter;
 import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.Rectangle;
 
+import io.sly.helix.Constants;
 import io.sly.helix.game.BaseGame;
 import io.sly.helix.game.Data;
 import io.sly.helix.game.entities.GameObject;
+import io.sly.helix.game.entities.SpatialHashGrid;
+import io.sly.helix.game.entities.TypeIndex;
 import io.sly.helix.utils.ClassUtils;
+import io.sly.helix.utils.math.Vector2D;
 
 /**
  * Basic implementation of {@link ScreenAdapater}
@@ -26,17 +31,26 @@ public abstract class Screen extends ScreenAdapter {
 
 	private boolean initialized = false;
 
-	private final List<GameObject> objects = new ArrayList<>();
+	/**
+	 * Every object in the screen, indexed by type
+	 */
+	private final TypeIndex objects = new TypeIndex();
+
+	/**
+	 * Spatial index over {@link Screen#objects}
+	 */
+	private final SpatialHashGrid grid;
 	
 	/**
-	 * Basic Step event of the screen. Called before {@link Screen#draw}
-	 * @param delta - Time since last update (seconds)
+	 * Basic Step event of the screen. Called once per tick by {@link Data#update}
+	 * @param delta - Length of the tick (seconds)
 	 */
 	protected abstract void step(float delta);
 	
 	/**
-	 * Basic Draw event of the screen. Called after {@link Screen#step}
-	 * @param delta - Time since last update (seconds)
+	 * Basic Draw event of the screen. Called once per frame, after any ticks
+	 * due that frame have run. Use {@link Data#getAlpha} to interpolate between ticks
+	 * @param delta - Time since last frame (seconds)
 	 */
 	protected abstract void draw(float delta);
 	
@@ -57,9 +71,19 @@ public abstract class Screen extends ScreenAdapter {
 	 * @param game - Game to link to 
 	 */
 	public Screen(BaseGame game, int id) {
+		this(game, id, Constants.SPATIAL_CELL_SIZE);
+	}
+	
+	/**
+	 * Create a new Screen and link it to a {@link BaseGame}
+	 * @param game - Game to link to 
+	 * @param cellSize - cell size of the screen's {@link SpatialHashGrid} (px)
+	 */
+	public Screen(BaseGame game, int id, float cellSize) {
 		this.game = game;
 		this.data = game.getData();
 		this.id = id;
+		this.grid = new SpatialHashGrid(cellSize);
 	}
 	
 	/**
@@ -80,9 +104,16 @@ public abstract class Screen extends ScreenAdapter {
 		this.init();
 	}
 	
+	/**
+	 * Run one tick of the screen
+	 * @param delta - Length of the tick (seconds)
+	 */
+	public final void update(float delta) {
+		this.step(delta);
+	}
+
 	@Override
 	public void render(float delta) {
-		this.step(delta);
 		this.draw(delta);
 	}
 	
@@ -104,12 +135,64 @@ public abstract class Screen extends ScreenAdapter {
 		return getData().getCurrentCamera();
 	}
 
+	/**
+	 * @return a live, read-only view of every object in the screen
+	 */
 	public List<GameObject> getObjects() {
-		return objects;
+		return objects.findAll(GameObject.class);
 	}
 
 	public boolean addObject(GameObject object) {
-		return getObjects().add(object);
+		if(!objects.add(object))
+			return false;
+		grid.insert(object);
+		return true;
+	}
+
+	public boolean removeObject(GameObject object) {
+		grid.remove(object);
+		return objects.remove(object);
+	}
+
+	/**
+	 * Find an instance of some class or interface in the screen
+	 * @param searchClass - Type of class to search for
+	 * @return an instance of searchClass or null if none is found
+	 */
+	public <T> T find(Class<T> searchClass) {
+		return objects.find(searchClass);
+	}
+
+	/**
+	 * Get every instance of some class or interface in the screen
+	 * @param searchClass - Type of class to search for
+	 * @return a live, read-only view of every instance of searchClass
+	 */
+	public <T> List<T> findAll(Class<T> searchClass) {
+		return objects.findAll(searchClass);
+	}
+
+	public SpatialHashGrid getGrid() {
+		return grid;
+	}
+
+	/**
+	 * Find every object within some distance of a point
+	 * @param center - centre of the search
+	 * @param radius - search radius (px)
+	 * @return a new list of the objects found
+	 */
+	public List<GameObject> queryRadius(Vector2D center, float radius) {
+		return grid.queryRadius(center.getX(), center.getY(), radius, new ArrayList<GameObject>());
+	}
+
+	/**
+	 * Find every object positioned inside a rectangle
+	 * @param rect - area to search
+	 * @return a new list of the objects found
+	 */
+	public List<GameObject> queryRect(Rectangle rect) {
+		return grid.queryRect(rect, new ArrayList<GameObject>());
 	}
 
 	public int getId() {
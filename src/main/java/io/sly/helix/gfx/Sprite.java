@@ -110,6 +110,24 @@ public class Sprite {
 		batch.setColor(last);
 	}
 
+	/**
+	 * Get the area the sprite would cover if it were drawn at a location, without
+	 * drawing it or updating its animation
+	 * @param x - x position the sprite would be drawn at (top left)
+	 * @param y - y position the sprite would be drawn at (top left)
+	 * @param out - {@link Rectangle} to store the area in
+	 * @return - out
+	 */
+	public Rectangle getDrawBounds(float x, float y, Rectangle out) {
+		float width = animation.getWidth() * scale.getX();
+		float height = animation.getHeight() * scale.getY();
+		if (flipped)
+			x += animation.getWidth() - width;
+
+		// Negative scales draw to the left of / below the given location
+		return out.set(Math.min(x, x + width), Math.min(y, y + height), Math.abs(width), Math.abs(height));
+	}
+
 	/**
 	 * Restart the animation
 	 */
@@ -0,0 +1,192 @@
+package io.sly.helix.utils;
+
+import java.util.Arrays;
+
+import io.sly.helix.Constants;
+import io.sly.helix.exception.HelixRuntimeException;
+
+/**
+ * Hands out packed <code>int</code> handles made of a slot index and a
+ * generation. Freeing a handle bumps the generation of its slot, so any copies
+ * of the old handle stop resolving instead of pointing at whatever reuses the
+ * slot. Freed slots go through a FIFO queue and are only reused once
+ * {@link HandleAllocator#MIN_FREE_SLOTS} are waiting, which spreads reuse over
+ * many slots and keeps generations from wrapping quickly
+ * <br><br>
+ * Allocating and freeing are O(1), thread-safe, and only allocate when the
+ * backing arrays need to grow
+ *
+ * @author Sly
+ *
+ * @param <T> - type of object the handles refer to
+ */
+public final class HandleAllocator<T> {
+
+	/**
+	 * Bits of a handle used for the slot index
+	 */
+	public static final int INDEX_BITS = 20;
+	/**
+	 * Bits of a handle used for the generation
+	 */
+	public static final int GENERATION_BITS = 32 - INDEX_BITS;
+	/**
+	 * Maximum number of live handles
+	 */
+	public static final int MAX_HANDLES = 1 << INDEX_BITS;
+	/**
+	 * Handle that never resolves to anything
+	 */
+	public static final int NO_HANDLE = 0;
+
+	private static final int INDEX_MASK = MAX_HANDLES - 1;
+	private static final int GENERATION_MASK = (1 << GENERATION_BITS) - 1;
+
+	/**
+	 * Number of freed slots to hold back before any of them is reused
+	 */
+	public static final int MIN_FREE_SLOTS = 1024;
+
+	/**
+	 * Current generation of each slot. Generations start at 1 so that
+	 * {@link HandleAllocator#NO_HANDLE} is never handed out
+	 */
+	private int[] generations;
+	/**
+	 * Object each slot currently refers to
+	 */
+	private Object[] slots;
+	/**
+	 * Number of slots that have been handed out at least once
+	 */
+	private int used;
+
+	/**
+	 * Ring buffer of freed slot indices
+	 */
+	private int[] freeQueue;
+	private int freeHead, freeCount;
+
+	public HandleAllocator() {
+		this(256);
+	}
+
+	/**
+	 * @param capacity - number of slots to allocate up front
+	 */
+	public HandleAllocator(int capacity) {
+		capacity = Math.max(16, Math.min(capacity, MAX_HANDLES));
+		this.generations = new int[capacity];
+		this.slots = new Object[capacity];
+		this.freeQueue = new int[capacity];
+	}
+
+	/**
+	 * Allocate a handle for an object
+	 *
+	 * @param object - object the handle should resolve to
+	 * @return - a new handle
+	 * @throws HelixRuntimeException if {@link HandleAllocator#MAX_HANDLES} are alive
+	 */
+	public synchronized int allocate(T object) {
+		int index;
+		if (freeCount > MIN_FREE_SLOTS || (used == MAX_HANDLES && freeCount > 0)) {
+			index = freeQueue[freeHead];
+			freeHead = (freeHead + 1) % freeQueue.length;
+			freeCount--;
+		} else if (used < MAX_HANDLES) {
+			index = used++;
+			if (index == slots.length)
+				this.grow();
+			generations[index] = 1;
+		} else {
+			throw new HelixRuntimeException(Constants.ERR_NO_HANDLES, "Ran out of handles: " + MAX_HANDLES + " alive");
+		}
+
+		slots[index] = object;
+		return (generations[index] << INDEX_BITS) | index;
+	}
+
+	/**
+	 * Free a handle. Does nothing if the handle is already stale
+	 *
+	 * @param handle - handle to free
+	 * @return - whether or not the handle was alive
+	 */
+	public synchronized boolean free(int handle) {
+		if (!this.isAlive(handle))
+			return false;
+
+		int index = handle & INDEX_MASK;
+		slots[index] = null;
+
+		int generation = (generations[index] + 1) & GENERATION_MASK;
+		generations[index] = generation == 0 ? 1 : generation;
+
+		freeQueue[(freeHead + freeCount) % freeQueue.length] = index;
+		freeCount++;
+		return true;
+	}
+
+	/**
+	 * Get the object a handle refers to
+	 *
+	 * @param handle - handle to look up
+	 * @return - the object, or null if the handle is stale or was never allocated
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized T resolve(int handle) {
+		if (!this.isAlive(handle))
+			return null;
+		return (T) slots[handle & INDEX_MASK];
+	}
+
+	/**
+	 * Whether or not a handle still refers to a live object
+	 *
+	 * @param handle - handle to check
+	 */
+	public synchronized boolean isAlive(int handle) {
+		int index = handle & INDEX_MASK;
+		return handle != NO_HANDLE
+				&& index < used
+				&& generations[index] == (handle >>> INDEX_BITS);
+	}
+
+	/**
+	 * @return - number of live handles
+	 */
+	public synchronized int size() {
+		return used - freeCount;
+	}
+
+	/**
+	 * Get the slot index of a handle
+	 */
+	public static int indexOf(int handle) {
+		return handle & INDEX_MASK;
+	}
+
+	/**
+	 * Get the generation of a handle
+	 */
+	public static int generationOf(int handle) {
+		return handle >>> INDEX_BITS;
+	}
+
+	/**
+	 * Double the size of the backing arrays, unrolling the free queue
+	 */
+	private void grow() {
+		int capacity = Math.min(slots.length * 2, MAX_HANDLES);
+		generations = Arrays.copyOf(generations, capacity);
+		slots = Arrays.copyOf(slots, capacity);
+
+		int[] queue = new int[capacity];
+		for (int i = 0; i < freeCount; i++) {
+			queue[i] = freeQueue[(freeHead + i) % freeQueue.length];
+		}
+		freeQueue = queue;
+		freeHead = 0;
+	}
+}
@@ -0,0 +1,449 @@
+package io.sly.helix.utils.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+import io.sly.helix.Constants;
+import io.sly.helix.exception.HelixRuntimeException;
+
+/**
+ * Forward-only reader that streams through a file with a fixed-size buffer,
+ * refilled from the file as it runs out. Unlike {@link BinaryReader}, only
+ * the buffer is ever in memory, so files of any size can be read
+ * <br><br>
+ * Multi-byte values are big-endian unless changed with {@link BinaryCursor#setOrder},
+ * to match {@link BinaryWriter}. Files written by a compressed {@link BinaryWriter}
+ * are decompressed a block at a time as they are read.
+ * Call {@link BinaryCursor#close} when done reading
+ * @author Sly
+ *
+ * @see {@link BinaryReader}, {@link Serializable#parse(BinaryCursor, int)}
+ */
+public class BinaryCursor implements Closeable {
+	private static final Logger log = Logger.getLogger(BinaryCursor.class.getName());
+
+	/**
+	 * Default size of the read buffer (bytes)
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Reference to the path of the file being read in
+	 */
+	public final String filePath;
+
+	private ReadableByteChannel channel;
+
+	/**
+	 * Bytes read from the {@link BinaryCursor#channel} and not yet consumed,
+	 * between its position and limit
+	 */
+	private ByteBuffer buffer;
+	/**
+	 * Whether {@link BinaryCursor#buffer} came from the {@link BufferPool}
+	 */
+	private boolean pooled;
+
+	/**
+	 * Position in the file of the start of the {@link BinaryCursor#buffer}
+	 */
+	private long bufferStart;
+
+	/**
+	 * Total size of the data, -1 if unknown
+	 */
+	private final long size;
+
+	/**
+	 * Open a file to stream through (relative to absolute directory)
+	 * @param filePath - Path of the file to read in
+	 *
+	 * @see {@link io.sly.helix.Constants#ABS_PATH}
+	 */
+	public BinaryCursor(String filePath) {
+		this(filePath, true);
+	}
+
+	/**
+	 * Open a file to stream through
+	 * @param filePath - Path of the file to read in
+	 * @param relative - whether or not the file path is relative to the absolute directory
+	 *
+	 * @see {@link io.sly.helix.Constants#ABS_PATH}
+	 */
+	public BinaryCursor(String filePath, boolean relative) {
+		this(filePath, relative, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Open a file to stream through
+	 * @param filePath - Path of the file to read in
+	 * @param relative - whether or not the file path is relative to the absolute directory
+	 * @param bufferSize - bytes to read from the file at a time
+	 * @throws HelixRuntimeException if the file does not exist or cannot be read
+	 *
+	 * @see {@link io.sly.helix.Constants#ABS_PATH}
+	 */
+	public BinaryCursor(String filePath, boolean relative, int bufferSize) {
+		this(relative ? Constants.ABS_PATH + filePath : filePath, open(relative ? Constants.ABS_PATH + filePath : filePath), bufferSize);
+	}
+
+	/**
+	 * Stream through data from any channel, such as a decompressing one
+	 * @param name - name to report the data as
+	 * @param channel - channel to read from, closed along with the cursor
+	 * @param bufferSize - bytes to read from the channel at a time
+	 */
+	public BinaryCursor(String name, ReadableByteChannel channel, int bufferSize) {
+		this.filePath = name;
+		this.channel = channel;
+
+		long size = -1;
+		if (channel instanceof SeekableByteChannel) {
+			try {
+				size = ((SeekableByteChannel) channel).size();
+			} catch (IOException e) {
+				log.warning("Could not get size of " + name);
+			}
+		}
+		this.size = size;
+
+		// Every typed read needs up to 8 bytes in the buffer at once
+		buffer = BufferPool.acquire(Math.max(bufferSize, Long.BYTES));
+		pooled = true;
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		buffer.flip();
+	}
+
+	/**
+	 * Stream through bytes that are already in memory, such as a
+	 * {@link Journal} record. The buffer is read from its position to its limit
+	 * @param name - name to report the data as
+	 * @param data - data to read
+	 */
+	public BinaryCursor(String name, ByteBuffer data) {
+		this.filePath = name;
+		this.channel = Channels.newChannel(new ByteArrayInputStream(new byte[0]));
+		this.size = data.remaining();
+		this.buffer = data.slice().order(ByteOrder.BIG_ENDIAN);
+	}
+
+	/**
+	 * Open a file, decompressing it if it was written compressed
+	 */
+	private static SeekableByteChannel open(String path) {
+		FileChannel file = null;
+		try {
+			file = FileChannel.open(new File(path).toPath(), StandardOpenOption.READ);
+			if (BlockReadChannel.isCompressed(file))
+				return new BlockReadChannel(file, path);
+			return file;
+		} catch (NoSuchFileException e) {
+			log.severe("FAILED TO FIND FILE: " + path);
+			throw new HelixRuntimeException(Constants.ERR_RES_NOT_FOUND, "File doesn't exist: " + path, e);
+		} catch (IOException e) {
+			if (file != null) {
+				try {
+					file.close();
+				} catch (IOException closeFailed) {
+					log.severe("Failed to close file: " + path);
+				}
+			}
+			log.severe("Failed to open file: " + path);
+			throw new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL, "Failed to open file: " + path, e);
+		}
+	}
+
+	/**
+	 * Read a single byte
+	 */
+	public byte readByte() {
+		this.require(Byte.BYTES);
+		return buffer.get();
+	}
+
+	/**
+	 * Read a 2 byte integer
+	 */
+	public short readShort() {
+		this.require(Short.BYTES);
+		return buffer.getShort();
+	}
+
+	/**
+	 * Read a 4 byte integer
+	 */
+	public int readInt() {
+		this.require(Integer.BYTES);
+		return buffer.getInt();
+	}
+
+	/**
+	 * Read an 8 byte integer
+	 */
+	public long readLong() {
+		this.require(Long.BYTES);
+		return buffer.getLong();
+	}
+
+	/**
+	 * Read a 4 byte float
+	 */
+	public float readFloat() {
+		this.require(Float.BYTES);
+		return buffer.getFloat();
+	}
+
+	/**
+	 * Read an 8 byte double
+	 */
+	public double readDouble() {
+		this.require(Double.BYTES);
+		return buffer.getDouble();
+	}
+
+	/**
+	 * Read an unsigned integer written by {@link BinaryWriter#writeVarInt}
+	 */
+	public int readVarInt() {
+		return (int) this.readVarLong();
+	}
+
+	/**
+	 * Read an unsigned long written by {@link BinaryWriter#writeVarLong}
+	 * @throws HelixRuntimeException if the varint is longer than {@link Varint#MAX_BYTES}
+	 */
+	public long readVarLong() {
+		// Skip the refill check per byte when the longest varint is already buffered
+		boolean buffered = buffer.remaining() >= Varint.MAX_BYTES;
+		long value = 0;
+		for (int shift = 0; shift < Long.SIZE; shift += 7) {
+			byte b = buffered ? buffer.get() : this.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+		throw new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL, "Malformed varint at " + (this.getPosition() - Varint.MAX_BYTES) + " in " + filePath);
+	}
+
+	/**
+	 * Read a signed integer written by {@link BinaryWriter#writeSignedVarInt}
+	 */
+	public int readSignedVarInt() {
+		return Varint.unZigZag(this.readVarInt());
+	}
+
+	/**
+	 * Read a signed long written by {@link BinaryWriter#writeSignedVarLong}
+	 */
+	public long readSignedVarLong() {
+		return Varint.unZigZag(this.readVarLong());
+	}
+
+	/**
+	 * Read a float written by {@link BinaryWriter#writeQuantized}
+	 * @param previous - value read before, or 0 for the first
+	 * @param step - step the value was written with
+	 */
+	public float readQuantized(float previous, float step) {
+		long steps = Varint.quantize(previous, step) + this.readSignedVarLong();
+		return (float) (steps * (double) step);
+	}
+
+	/**
+	 * Read a boolean value from one bit of the next byte
+	 * @param bitPosition - Position of the bit in the byte to look at
+	 * @return - boolean value of the bit requested
+	 */
+	public boolean readBoolean(int bitPosition) {
+		return (this.readByte() & (1 << bitPosition)) != 0;
+	}
+
+	/**
+	 * Read a string written by {@link BinaryWriter#write(String, int)}
+	 * @param length - length of the string in bytes
+	 * @return - the string, with its padding trimmed
+	 */
+	public String readString(int length) {
+		return new String(this.readBytes(length)).trim();
+	}
+
+	/**
+	 * Read some number of bytes
+	 * @param len - amount of bytes to read
+	 * @return - an array containing the bytes read
+	 */
+	public byte[] readBytes(int len) {
+		return this.readBytes(new byte[len], 0, len);
+	}
+
+	/**
+	 * Read some number of bytes into an array
+	 * @param out - array to copy into
+	 * @param offset - index in out to start copying to
+	 * @param len - amount of bytes to read
+	 * @return - out
+	 */
+	public byte[] readBytes(byte[] out, int offset, int len) {
+		while (len > 0) {
+			if (!buffer.hasRemaining())
+				this.require(1);
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(out, offset, n);
+			offset += n;
+			len -= n;
+		}
+		return out;
+	}
+
+	/**
+	 * Move forward without reading
+	 * @param bytes - amount of bytes to skip over
+	 */
+	public void skip(long bytes) {
+		if (bytes <= buffer.remaining()) {
+			buffer.position(buffer.position() + (int) bytes);
+			return;
+		}
+
+		bytes -= buffer.remaining();
+		bufferStart += buffer.limit();
+		buffer.clear().flip();
+
+		if (channel instanceof SeekableByteChannel) {
+			SeekableByteChannel seekable = (SeekableByteChannel) channel;
+			try {
+				long target = seekable.position() + bytes;
+				if (size >= 0 && target > size)
+					throw this.endOfData(new EOFException());
+				seekable.position(target);
+				bufferStart += bytes;
+			} catch (IOException e) {
+				throw this.readFailed(e);
+			}
+		} else {
+			// Can't seek, read and throw away
+			while (bytes > 0) {
+				this.require(1);
+				int n = (int) Math.min(bytes, buffer.remaining());
+				buffer.position(buffer.position() + n);
+				bytes -= n;
+			}
+		}
+	}
+
+	/**
+	 * Make sure some number of bytes are in the buffer, refilling it from the
+	 * channel if not
+	 */
+	private void require(int bytes) {
+		if (buffer.remaining() >= bytes)
+			return;
+
+		// Everything in memory is already in the buffer
+		if (!pooled)
+			throw this.endOfData(new EOFException());
+
+		bufferStart += buffer.position();
+		buffer.compact();
+		try {
+			while (buffer.position() < bytes) {
+				if (channel.read(buffer) < 0) {
+					buffer.flip();
+					throw this.endOfData(new EOFException());
+				}
+			}
+			// Top up the rest of the buffer while we're at it
+			if (buffer.hasRemaining())
+				channel.read(buffer);
+		} catch (IOException e) {
+			buffer.flip();
+			throw this.readFailed(e);
+		}
+		buffer.flip();
+	}
+
+	private HelixRuntimeException endOfData(EOFException e) {
+		return new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL, "Read past the end of " + filePath, e);
+	}
+
+	private HelixRuntimeException readFailed(IOException e) {
+		log.severe("Failed to read file: " + filePath);
+		return new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL, "Failed to read file: " + filePath, e);
+	}
+
+	/**
+	 * Release the file. The cursor must not be used afterwards
+	 */
+	@Override
+	public void close() {
+		if (channel == null)
+			return;
+
+		try {
+			channel.close();
+		} catch (IOException e) {
+			log.severe("Failed to close file: " + filePath);
+		}
+		channel = null;
+		if (pooled)
+			BufferPool.release(buffer);
+		pooled = false;
+		buffer = ByteBuffer.allocate(0);
+	}
+
+	/**
+	 * @return - position of the next byte to be read
+	 */
+	public long getPosition() {
+		return bufferStart + buffer.position();
+	}
+
+	/**
+	 * @return - total number of bytes in the file, -1 if not known
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return - whether or not there is anything left to read
+	 */
+	public boolean hasRemaining() {
+		if (buffer.hasRemaining())
+			return true;
+		if (size >= 0)
+			return this.getPosition() < size;
+
+		try {
+			this.require(1);
+			return true;
+		} catch (HelixRuntimeException e) {
+			return false;
+		}
+	}
+
+	public ByteOrder getOrder() {
+		return buffer.order();
+	}
+
+	/**
+	 * Set the byte order multi-byte values are read in
+	 * @param order - {@link ByteOrder#BIG_ENDIAN} (default) or {@link ByteOrder#LITTLE_ENDIAN}
+	 */
+	public void setOrder(ByteOrder order) {
+		buffer.order(order);
+	}
+}
@@ -1,89 +1,127 @@
 package io.sly.helix.utils.io;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.logging.Logger;
 
 import io.sly.helix.Constants;
+import io.sly.helix.exception.HelixRuntimeException;
 
 /**
  * Read in binary from a location
- * Stores an array of bytes read in from a file
+ * <br><br>
+ * Files of {@link BinaryReader#MAP_THRESHOLD} bytes or more are memory mapped,
+ * so only the pages that are actually read are loaded. Smaller files are read
+ * into a pooled direct buffer in one go. Either way, every getter reads at an
+ * absolute position and nothing is boxed
+ * <br><br>
+ * Files written by a compressed {@link BinaryWriter} are read the same way,
+ * decompressing only the blocks that are read from. Such a reader is not
+ * safe to use from more than one thread at once
+ * <br><br>
+ * Multi-byte values are big-endian unless changed with {@link BinaryReader#setOrder}.
+ * Call {@link BinaryReader#close} when done reading
  * @author Sly
  *
- * @see {@link Byte}
+ * @see {@link BinaryWriter}
  */
-public class BinaryReader {
+public class BinaryReader implements Closeable {
 	private static final Logger log = Logger.getLogger(BinaryReader.class.getName());
 
+	/**
+	 * Smallest file size that is memory mapped instead of read into a buffer (bytes)
+	 */
+	public static final int MAP_THRESHOLD = 1 << 16;
+
+	/**
+	 * Getters at or below this length copy byte by byte instead of through a
+	 * duplicate of the buffer
+	 */
+	private static final int SMALL_COPY = 64;
+
 	/**
 	 * Reference to the path of the file being read in
 	 */
 	public final String filePath;
 
-	private InputStream is;
-	
-	private final ArrayList<Byte> bytes;
-	
+	/**
+	 * Contents of the file
+	 */
+	private ByteBuffer buffer;
+	/**
+	 * Whether {@link BinaryReader#buffer} came from the {@link BufferPool} and
+	 * goes back to it on {@link BinaryReader#close}
+	 */
+	private boolean pooled;
+	/**
+	 * Blocks of a compressed file, null if the file is not compressed
+	 */
+	private BlockReadChannel blocks;
+
 	/**
 	 * Read in the bytes from this file (relative to absolute directory)
 	 * @param filePath - Path of the file to read in
-	 * 
+	 *
 	 * @see {@link io.sly.helix.Constants#ABS_PATH}
 	 */
 	public BinaryReader(String filePath) {
 		this(filePath, true);
 	}
-	
+
 	/**
 	 * Read in the bytes from this file
 	 * @param filePath - Path of the file to read in
 	 * @param relative - whether or not the file path is relative to the absolute directory
-	 * 
+	 * @throws HelixRuntimeException if the file does not exist or cannot be read
+	 *
 	 * @see {@link io.sly.helix.Constants#ABS_PATH}
 	 */
 	public BinaryReader(String filePath, boolean relative) {
-		this.bytes = new ArrayList<Byte>();
-		
 		if(relative)
 			filePath = Constants.ABS_PATH + filePath;
-		if(!new File(filePath).exists())
-			System.err.println("File doesn't exist: " + filePath);
-		
+
 		this.filePath = filePath;
 		this.readBytes();
-		
-		if(this.bytes.size() == 0)
-			System.out.println("BAD FILE");
-		System.out.println("Read in " + this.bytes.size() + " Bytes from " + this.filePath);
+
+		if(this.size() == 0)
+			log.warning("Empty file: " + this.filePath);
+		log.fine("Read in " + this.size() + " Bytes from " + this.filePath);
 	}
-	
+
+	/**
+	 * Read from bytes that are already in memory, such as a file that has been
+	 * decompressed. The buffer is read from its position to its limit
+	 * @param name - name to report the data as
+	 * @param data - data to read
+	 */
+	public BinaryReader(String name, ByteBuffer data) {
+		this.filePath = name;
+		this.buffer = data.slice().order(ByteOrder.BIG_ENDIAN);
+	}
+
 	/**
-	 * Fetch a string from a position in the {@link BinaryReader#bytes} array
+	 * Fetch a string from a position in the file
 	 * @param position - position to read from in the byte array
 	 * @param length - length to read in the byte array
 	 * @return - A string containing data from the byte array at the specified position, up to the length requested
 	 */
 	public String getString(int position, int length) {
-		// start at specified position
-		byte[] data = new byte[length];
-		for(int i = 0; i < data.length - 1; i++) {
-			data[i] = bytes.get(position + i);
-		}
-
-		return new String(data).trim();
+		return new String(this.getBytes(position, length)).trim();
 	}
-	
+
 	/**
 	 * Return a boolean value from a byte at a specified position
-	 * @param bytePosition - Position of the byte in the {@link bytes} to look at
+	 * @param bytePosition - Position of the byte in the file to look at
 	 * @param bitPosition - Position of the bit in the byte to look at
 	 * @return - boolean value of the bit requested
-	 * 
+	 *
 	 * @see {@link BinaryReader#getBoolean}
 	 */
 	public boolean getBool(int bytePosition, int bitPosition) {
@@ -92,80 +130,285 @@ public class BinaryReader {
 
 	/**
 	 * Return a boolean value from a byte at a specified position
-	 * @param bytePosition - Position of the byte in the {@link bytes} to look at
+	 * @param bytePosition - Position of the byte in the file to look at
 	 * @param bitPosition - Position of the bit in the byte to look at
 	 * @return - boolean value of the bit requested
-	 * 
+	 *
 	 * @see {@link BinaryReader#getBool}
 	 */
 	public boolean getBoolean(int bytePosition, int bitPosition) {
-		int block = 0x00;
-		
-		block = bytes.get(bytePosition) | block;
-		
-		int convertedBitPosition = (int)Math.pow(2, bitPosition);
-		return ((block & convertedBitPosition) != 0);
+		return (this.getByte(bytePosition) & (1 << bitPosition)) != 0;
 	}
-	
+
 	/**
 	 * Fetch bytes from a given position up to a length
-	 * @param position - position in the {@link BinaryReader#bytes} to read from
+	 * @param position - position in the file to read from
 	 * @param len - amount of bytes to fetch
 	 * @return - an array of bytes containing all the bytes fetched
 	 */
 	public byte[] getBytes(int position, int len) {
-		byte[] bytes = new byte[len];
-		for(int i = 0; i < bytes.length; i++) {
-			bytes[i] = this.bytes.get(position + i);
+		return this.getBytes(position, new byte[len], 0, len);
+	}
+
+	/**
+	 * Copy bytes from a given position into an array
+	 * @param position - position in the file to read from
+	 * @param out - array to copy into
+	 * @param offset - index in out to start copying to
+	 * @param len - amount of bytes to copy
+	 * @return - out
+	 */
+	public byte[] getBytes(int position, byte[] out, int offset, int len) {
+		if(blocks != null) {
+			blocks.copy(position, out, offset, len);
+		} else if(len <= SMALL_COPY) {
+			for(int i = 0; i < len; i++) {
+				out[offset + i] = buffer.get(position + i);
+			}
+		} else {
+			ByteBuffer view = buffer.duplicate();
+			view.position(position);
+			view.get(out, offset, len);
 		}
-		
-		return bytes;
+		return out;
+	}
+
+	/**
+	 * Fetch a single byte
+	 * @param position - position to get the byte from
+	 */
+	public byte getByte(int position) {
+		if(blocks != null) {
+			ByteBuffer block = blocks.locate(position, Byte.BYTES);
+			return block.get(block.position());
+		}
+		return buffer.get(position);
+	}
+
+	/**
+	 * Fetch a 2 byte integer
+	 * @param position - position to get the short from
+	 */
+	public short getShort(int position) {
+		if(blocks != null) {
+			ByteBuffer block = blocks.locate(position, Short.BYTES);
+			return block.getShort(block.position());
+		}
+		return buffer.getShort(position);
 	}
-	
+
 	/**
-	 * Fetch a (single byte) integer from the {@link BinaryReader#bytes}
+	 * Fetch a 4 byte integer. Use {@link BinaryReader#getByte} for values
+	 * written one byte each by {@link BinaryWriter#write(int...)}
 	 * @param position - position to get the integer from
 	 */
 	public int getInt(int position) {
-		return (int)bytes.get(position);
+		if(blocks != null) {
+			ByteBuffer block = blocks.locate(position, Integer.BYTES);
+			return block.getInt(block.position());
+		}
+		return buffer.getInt(position);
+	}
+
+	/**
+	 * Fetch an 8 byte integer
+	 * @param position - position to get the long from
+	 */
+	public long getLong(int position) {
+		if(blocks != null) {
+			ByteBuffer block = blocks.locate(position, Long.BYTES);
+			return block.getLong(block.position());
+		}
+		return buffer.getLong(position);
+	}
+
+	/**
+	 * Fetch a 4 byte float
+	 * @param position - position to get the float from
+	 */
+	public float getFloat(int position) {
+		if(blocks != null) {
+			ByteBuffer block = blocks.locate(position, Float.BYTES);
+			return block.getFloat(block.position());
+		}
+		return buffer.getFloat(position);
 	}
-	
+
+	/**
+	 * Fetch an 8 byte double
+	 * @param position - position to get the double from
+	 */
+	public double getDouble(int position) {
+		if(blocks != null) {
+			ByteBuffer block = blocks.locate(position, Double.BYTES);
+			return block.getDouble(block.position());
+		}
+		return buffer.getDouble(position);
+	}
+
+	/**
+	 * Fetch an unsigned integer written by {@link BinaryWriter#writeVarInt}
+	 * @param position - position to get the varint from
+	 *
+	 * @see {@link Varint#size} for the number of bytes it took
+	 */
+	public int getVarInt(int position) {
+		return (int) this.getVarLong(position);
+	}
+
 	/**
-	 * Reading byte array helper function
+	 * Fetch an unsigned long written by {@link BinaryWriter#writeVarLong}
+	 * @param position - position to get the varint from
+	 * @throws HelixRuntimeException if the varint is longer than {@link Varint#MAX_BYTES}
+	 *
+	 * @see {@link Varint#size} for the number of bytes it took
+	 */
+	public long getVarLong(int position) {
+		long value = 0;
+		for(int shift = 0; shift < Long.SIZE; shift += 7) {
+			byte b = this.getByte(position++);
+			value |= (long) (b & 0x7F) << shift;
+			if(b >= 0)
+				return value;
+		}
+		throw new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL, "Malformed varint at " + (position - Varint.MAX_BYTES) + " in " + filePath);
+	}
+
+	/**
+	 * Fetch a signed integer written by {@link BinaryWriter#writeSignedVarInt}
+	 * @param position - position to get the varint from
+	 */
+	public int getSignedVarInt(int position) {
+		return Varint.unZigZag(this.getVarInt(position));
+	}
+
+	/**
+	 * Fetch a signed long written by {@link BinaryWriter#writeSignedVarLong}
+	 * @param position - position to get the varint from
+	 */
+	public long getSignedVarLong(int position) {
+		return Varint.unZigZag(this.getVarLong(position));
+	}
+
+	/**
+	 * Map or read the file into {@link BinaryReader#buffer}
 	 */
 	private void readBytes() {
-		bytes.removeAll(bytes);
+		FileChannel channel = null;
 		try {
-			is = new FileInputStream(filePath);
-		} catch (FileNotFoundException e) {
+			channel = FileChannel.open(new File(filePath).toPath(), StandardOpenOption.READ);
+			if(BlockReadChannel.isCompressed(channel)) {
+				blocks = new BlockReadChannel(channel, filePath);
+				channel = null;
+				if(blocks.size() > Integer.MAX_VALUE) {
+					blocks.close();
+					throw new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL, "File too large to read: " + filePath);
+				}
+				buffer = ByteBuffer.allocate(0);
+				return;
+			}
+
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE)
+				throw new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL, "File too large to read: " + filePath);
+
+			if(size >= MAP_THRESHOLD) {
+				// The mapping stays valid after the channel is closed
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			} else {
+				buffer = BufferPool.acquire((int) size);
+				pooled = true;
+				while(buffer.hasRemaining() && channel.read(buffer) >= 0);
+				buffer.flip();
+			}
+			buffer.order(ByteOrder.BIG_ENDIAN);
+		} catch (NoSuchFileException e) {
 			log.severe("FAILED TO FIND FILE: " + filePath);
-			e.printStackTrace();
+			throw new HelixRuntimeException(Constants.ERR_RES_NOT_FOUND, "File doesn't exist: " + filePath, e);
+		} catch (IOException e) {
+			log.severe("Failed to read file: " + filePath);
+			throw new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL, "Failed to read file: " + filePath, e);
+		} finally {
+			// Kept open by a compressed file's blocks, mappings stay valid without it
+			if(channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					log.severe("Failed to close file: " + filePath);
+				}
+			}
 		}
-		
-		byte byteRead;
-		int numBytes = 0;
-		// read data
-		try {
-			while((byteRead = (byte)is.read()) != -1) {
-				bytes.add(byteRead);
-				numBytes++;
+	}
+
+	/**
+	 * Release the file. The reader must not be used afterwards
+	 */
+	@Override
+	public void close() {
+		if(blocks != null) {
+			try {
+				blocks.close();
+			} catch (IOException e) {
+				log.severe("Failed to close file: " + filePath);
 			}
-		} catch (IOException e) {
-			log.severe("Failed to read byte at: " + numBytes);
-			e.printStackTrace();
+			blocks = null;
 		}
+		if(pooled)
+			BufferPool.release(buffer);
+		pooled = false;
+		buffer = ByteBuffer.allocate(0);
+	}
+
+	/**
+	 * @return - number of bytes in the file, uncompressed
+	 */
+	public int size() {
+		if(blocks != null)
+			return (int) blocks.size();
+		return buffer.limit();
+	}
 
-		//try {
-		//  is.close();
-		//} catch (IOException e) {
-		//	e.printStackTrace();
-		//}
+	public ByteOrder getOrder() {
+		return buffer.order();
 	}
 
+	/**
+	 * Set the byte order multi-byte values are read in
+	 * @param order - {@link ByteOrder#BIG_ENDIAN} (default) or {@link ByteOrder#LITTLE_ENDIAN}
+	 */
+	public void setOrder(ByteOrder order) {
+		buffer.order(order);
+		if(blocks != null)
+			blocks.setOrder(order);
+	}
+
+	/**
+	 * @return - a read-only view of the file contents, which stays valid after
+	 * the reader is closed. A compressed file is decompressed in full first, and
+	 * read from memory from then on
+	 */
+	public ByteBuffer getBuffer() {
+		if(blocks != null) {
+			ByteBuffer all = ByteBuffer.allocate(this.size()).order(buffer.order());
+			blocks.copy(0, all.array(), 0, all.capacity());
+			this.close();
+			buffer = all;
+		}
+		// The view shares the pooled buffer, so it's left to the GC rather than reused under the caller
+		pooled = false;
+		return buffer.asReadOnlyBuffer().order(buffer.order());
+	}
+
+	/**
+	 * Copy every byte of the file into a list
+	 * @deprecated boxes every byte. Use the typed getters or {@link BinaryReader#getBuffer}
+	 */
+	@Deprecated
 	public ArrayList<Byte> getBytes() {
+		ArrayList<Byte> bytes = new ArrayList<>(this.size());
+		for(int i = 0; i < this.size(); i++) {
+			bytes.add(this.getByte(i));
+		}
 		return bytes;
 	}
-	
-	
-
 }
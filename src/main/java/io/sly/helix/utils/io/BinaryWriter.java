@@ -1,35 +1,97 @@
 package io.sly.helix.utils.io;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.logging.Logger;
 
 import io.sly.helix.Constants;
+import io.sly.helix.exception.HelixRuntimeException;
 
 /**
  * Basic Binary file writer
+ * <br><br>
+ * Writes go into a pooled direct buffer, which is written to the file's
+ * channel whenever it cannot fit the next value, on {@link BinaryWriter#flush}
+ * and on {@link BinaryWriter#close}. A save of millions of values therefore
+ * costs a few hundred writes to the file instead of one per value
+ * <br><br>
+ * Multi-byte values are big-endian unless changed with {@link BinaryWriter#setOrder},
+ * to match {@link BinaryReader}
+ * <br><br>
+ * A writer made without a path writes to memory instead, growing as needed.
+ * Its contents can then be copied out with {@link BinaryWriter#toByteArray}
+ * or appended to another writer with {@link BinaryWriter#writeTo}
+ * <br><br>
+ * A writer made with <code>compressed</code> set splits the file into blocks
+ * of the buffer's size and compresses each one on its own, in the
+ * background. {@link BinaryReader} and {@link BinaryCursor} read such files
+ * like any other, decompressing only the blocks they read from
  * @author Sly
  *
+ * @see {@link BinaryReader}
  */
-public class BinaryWriter {
-	private static final Logger log = Logger.getLogger(BinaryReader.class.getName());
+public class BinaryWriter implements Closeable {
+	private static final Logger log = Logger.getLogger(BinaryWriter.class.getName());
+
+	/**
+	 * Default size of the write buffer (bytes)
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Smallest write buffer (bytes). The longest single write, a varint of a
+	 * long, has to fit in the buffer at once
+	 */
+	private static final int MIN_BUFFER_SIZE = Varint.MAX_BYTES;
+
+	/**
+	 * Channel of the output file, null for a writer that writes to memory
+	 */
+	private WritableByteChannel channel;
+
+	/**
+	 * Bytes waiting to be written to the {@link BinaryWriter#channel}
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * Bytes already written to the {@link BinaryWriter#channel}
+	 */
+	private long flushed;
 
-	private OutputStream out;
-	
 	/**
 	 * Path to the output file
 	 */
 	private String outputPath;
 
+	/**
+	 * Create a new BinaryWriter that writes to memory
+	 */
+	public BinaryWriter() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Create a new BinaryWriter that writes to memory
+	 * @param initialCapacity - bytes to make room for up front
+	 */
+	public BinaryWriter(int initialCapacity) {
+		buffer = ByteBuffer.allocate(Math.max(initialCapacity, MIN_BUFFER_SIZE));
+		buffer.order(ByteOrder.BIG_ENDIAN);
+	}
+
 	/**
 	 * Create a new BinaryWriter and open up the file at the specified path, relative to
 	 * the absolute directory
-	 * 
+	 *
 	 * @param filePath
-	 * 
+	 *
 	 * @see {@link Constants#ABS_PATH}
 	 */
 	public BinaryWriter(String filePath) {
@@ -38,31 +100,91 @@ public class BinaryWriter {
 
 	/**
 	 * Create a new BinaryWriter and open up the file at the specified path
-	 * 
+	 *
 	 * @param filePath
 	 * @param relative
-	 * 
+	 *
 	 * @see {@link Constants#ABS_PATH}
 	 */
 	public BinaryWriter(String outputDir, boolean relative) {
+		this(outputDir, relative, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Create a new BinaryWriter and open up the file at the specified path,
+	 * replacing anything already there
+	 *
+	 * @param outputDir - path of the file to write to
+	 * @param relative - whether or not the path is relative to the absolute directory
+	 * @param bufferSize - bytes to hold before writing them to the file
+	 * @throws HelixRuntimeException if the file cannot be opened
+	 *
+	 * @see {@link Constants#ABS_PATH}
+	 */
+	public BinaryWriter(String outputDir, boolean relative, int bufferSize) {
+		this(outputDir, relative, bufferSize, false);
+	}
+
+	/**
+	 * Create a new BinaryWriter and open up the file at the specified path
+	 *
+	 * @param outputDir - path of the file to write to
+	 * @param relative - whether or not the path is relative to the absolute directory
+	 * @param bufferSize - bytes to hold before writing them to the file
+	 * @param append - whether to write after anything already in the file
+	 * rather than replacing it. {@link BinaryWriter#size} still only counts
+	 * bytes written by this writer
+	 * @throws HelixRuntimeException if the file cannot be opened
+	 *
+	 * @see {@link Constants#ABS_PATH}
+	 */
+	public BinaryWriter(String outputDir, boolean relative, int bufferSize, boolean append) {
+		this(outputDir, relative, bufferSize, append, false);
+	}
+
+	/**
+	 * Create a new BinaryWriter and open up the file at the specified path
+	 *
+	 * @param outputDir - path of the file to write to
+	 * @param relative - whether or not the path is relative to the absolute directory
+	 * @param bufferSize - bytes to hold before writing them to the file. Also
+	 * the size of each block when compressed
+	 * @param append - whether to write after anything already in the file
+	 * rather than replacing it
+	 * @param compressed - whether to block-compress the file. Cannot be appended to
+	 * @throws HelixRuntimeException if the file cannot be opened
+	 *
+	 * @see {@link Constants#ABS_PATH}
+	 */
+	public BinaryWriter(String outputDir, boolean relative, int bufferSize, boolean append, boolean compressed) {
+		if (append && compressed)
+			throw new HelixRuntimeException(Constants.ERR_RES_WRITE_FAIL, "Can't append to a compressed file: " + outputDir);
 		if (relative)
 			outputDir = Constants.ABS_PATH + outputDir;
 
 		this.outputPath = outputDir;
 
-		File outputFile = new File(outputDir);
 		try {
-			outputFile.createNewFile();
-		} catch (IOException e1) {
-			log.severe("Failed to create new file: " + outputDir);
-			e1.printStackTrace();
+			FileChannel file = FileChannel.open(new File(outputDir).toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE,
+					append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+			if (compressed) {
+				try {
+					channel = new BlockWriteChannel(file, Math.max(bufferSize, MIN_BUFFER_SIZE));
+				} catch (IOException e) {
+					file.close();
+					throw e;
+				}
+			} else {
+				channel = file;
+			}
+		} catch (IOException e) {
+			log.severe("Failed to open file: " + outputDir);
+			throw new HelixRuntimeException(Constants.ERR_RES_WRITE_FAIL, "Failed to open file: " + outputDir, e);
 		}
 
-		try {
-			out = new FileOutputStream(outputFile);
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		}
+		buffer = BufferPool.acquire(Math.max(bufferSize, MIN_BUFFER_SIZE));
+		buffer.order(ByteOrder.BIG_ENDIAN);
 	}
 
 	/**
@@ -70,96 +192,382 @@ public class BinaryWriter {
 	 * @param bytes - bytes to write
 	 */
 	public void write(byte... bytes) {
-		try {
-			System.out.println("wrote: " + bytes.length + " bytes");
-			out.write(bytes);
-		} catch (IOException e) {
-			log.severe("Failed to write data to file: " + outputPath);
-			e.printStackTrace();
-		}
+		this.write(bytes, 0, bytes.length);
 	}
 
 	/**
-	 * Write ints to the end of the file
+	 * Write part of an array of bytes to the end of the file
 	 * @param bytes - bytes to write
+	 * @param offset - index in bytes to start writing from
+	 * @param len - amount of bytes to write
+	 */
+	public void write(byte[] bytes, int offset, int len) {
+		if (len > buffer.remaining()) {
+			if (channel == null) {
+				this.grow(len);
+				buffer.put(bytes, offset, len);
+				return;
+			}
+			this.flush();
+			if (len > buffer.remaining()) {
+				// Too big to be worth copying, write it straight to the file
+				this.drain(ByteBuffer.wrap(bytes, offset, len));
+				return;
+			}
+		}
+		buffer.put(bytes, offset, len);
+	}
+
+	/**
+	 * Write ints to the end of the file, a single byte each
+	 * @param intBytes - values to write, each truncated to a byte
+	 *
+	 * @see {@link BinaryWriter#writeInts} for full 4 byte ints
 	 */
 	public void write(int... intBytes) {
-		byte[] bytes = new byte[intBytes.length];
 		for (int i = 0; i < intBytes.length; i++) {
-			bytes[i] = (byte) intBytes[i];
+			this.writeByte(intBytes[i]);
 		}
-		this.write(bytes);
 	}
 
 	/**
-	 * Write bytes to the end of the file
-	 * @param bytes - bytes to write
-	 * Same as: {@link BinaryWriter#write(int... ints)}
+	 * Write ints to the end of the file, 4 bytes each
+	 * @param ints - values to write
 	 */
-	public void writeInts(int... intBytes) {
-		byte[] bytes = new byte[intBytes.length];
-		for (int i = 0; i < intBytes.length; i++) {
-			bytes[i] = (byte) intBytes[i];
+	public void writeInts(int... ints) {
+		for (int i = 0; i < ints.length; i++) {
+			this.writeInt(ints[i]);
 		}
-		this.write(bytes);
+	}
+
+	/**
+	 * Write a single byte
+	 * @param value - value to write, truncated to a byte
+	 */
+	public void writeByte(int value) {
+		this.ensure(Byte.BYTES);
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * Write a 2 byte integer
+	 * @param value - value to write, truncated to a short
+	 */
+	public void writeShort(int value) {
+		this.ensure(Short.BYTES);
+		buffer.putShort((short) value);
+	}
+
+	/**
+	 * Write a 4 byte integer
+	 * @param value - value to write
+	 */
+	public void writeInt(int value) {
+		this.ensure(Integer.BYTES);
+		buffer.putInt(value);
+	}
+
+	/**
+	 * Write an 8 byte integer
+	 * @param value - value to write
+	 */
+	public void writeLong(long value) {
+		this.ensure(Long.BYTES);
+		buffer.putLong(value);
+	}
+
+	/**
+	 * Write a 4 byte float
+	 * @param value - value to write
+	 */
+	public void writeFloat(float value) {
+		this.ensure(Float.BYTES);
+		buffer.putFloat(value);
+	}
+
+	/**
+	 * Write an 8 byte double
+	 * @param value - value to write
+	 */
+	public void writeDouble(double value) {
+		this.ensure(Double.BYTES);
+		buffer.putDouble(value);
 	}
 
 	/**
 	 * Write a string to data. Will convert to binary first
-	 * 
+	 *
 	 * @param string - String to write
+	 * @param allocation - number of characters to pad the string out to with spaces
 	 */
 	public void write(String string, int allocation) {
-		while (string.length() < allocation) {
-			string += " ";
-		}
 		this.write(string.getBytes());
+		for (int i = string.length(); i < allocation; i++) {
+			this.writeByte(' ');
+		}
 	}
 
 	/**
-	 * Write a block of booleans to the end of the file
-	 * @param flags - booleans to write (sets of 4)
+	 * Write an unsigned integer as a varint, taking 1 to 5 bytes
+	 * @param value - value to write, taken as unsigned
+	 *
+	 * @see {@link Varint}
+	 */
+	public void writeVarInt(int value) {
+		this.writeVarLong(value & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Write an unsigned long as a varint, taking 1 to 10 bytes
+	 * @param value - value to write, taken as unsigned
+	 *
+	 * @see {@link Varint}
+	 */
+	public void writeVarLong(long value) {
+		this.ensure(Varint.MAX_BYTES);
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * Write a signed integer as a zigzag varint, so that small negative
+	 * values stay small
+	 * @param value - value to write
+	 *
+	 * @see {@link Varint#zigZag(int)}
+	 */
+	public void writeSignedVarInt(int value) {
+		this.writeVarInt(Varint.zigZag(value));
+	}
+
+	/**
+	 * Write a signed long as a zigzag varint, so that small negative values
+	 * stay small
+	 * @param value - value to write
+	 *
+	 * @see {@link Varint#zigZag(long)}
+	 */
+	public void writeSignedVarLong(long value) {
+		this.writeVarLong(Varint.zigZag(value));
+	}
+
+	/**
+	 * Write a float rounded to a whole number of steps, as the difference in
+	 * steps from a previous value. Coordinates that move a little between
+	 * entities or frames then take a byte or two instead of 4
+	 * @param value - value to write
+	 * @param previous - value written before, as read back, or 0 for the first
+	 * @param step - precision to keep, such as 1/16 of a pixel
+	 * @return - the value as it will be read back, to pass as the next previous value
+	 */
+	public float writeQuantized(float value, float previous, float step) {
+		long steps = Varint.quantize(value, step);
+		this.writeSignedVarLong(steps - Varint.quantize(previous, step));
+		return (float) (steps * (double) step);
+	}
+
+	/**
+	 * Write booleans as bits, 8 to a byte with the first flag in the lowest
+	 * bit, to be read with {@link BinaryReader#getBoolean}
+	 * @param flags - booleans to write. Bits past the end of the array are left clear
 	 * @param numBlocks - number of blocks to write (bytes)
 	 */
 	public void writeBools(boolean[] flags, int numBlocks) {
-		int[] blocks = new int[numBlocks];
-		for (int i = 0; i < blocks.length; i++) {
-			for (int j = 0; j < flags.length; j++) {
-				if (flags[j]) {
-					blocks[i] = (blocks[i] ^ (int) Math.pow(2, j));
-				}
+		for (int i = 0; i < numBlocks; i++) {
+			int block = 0;
+			for (int bit = 0; bit < 8 && i * 8 + bit < flags.length; bit++) {
+				if (flags[i * 8 + bit])
+					block |= 1 << bit;
 			}
-
-			this.write(blocks);
+			this.writeByte(block);
 		}
 	}
 
 	/**
-	 * Write a single block of booleans to the end of the file
+	 * Write booleans as bits, in as few bytes as fit them
 	 * @param flags - booleans to write
+	 *
+	 * @see {@link BinaryWriter#writeBools(boolean[], int)}
 	 */
 	public void writeBools(boolean[] flags) {
-		if (flags.length != 4)
+		this.writeBools(flags, (flags.length + 7) / 8);
+	}
+
+	/**
+	 * Make room in the buffer for some number of bytes
+	 */
+	private void ensure(int bytes) {
+		if (buffer.remaining() >= bytes)
 			return;
-		this.writeBools(flags, 1);
+		if (channel == null)
+			this.grow(bytes);
+		else
+			this.flush();
 	}
 
 	/**
-	 * Flush the output and close the file
+	 * Grow the buffer of a memory writer to fit some number of extra bytes
 	 */
-	public void close() {
+	private void grow(int bytes) {
+		int capacity = buffer.capacity();
+		while (capacity - buffer.position() < bytes) {
+			capacity = capacity << 1;
+			if (capacity < 0)
+				throw new HelixRuntimeException(Constants.ERR_RES_WRITE_FAIL, "Binary data too large to hold in memory");
+		}
+
+		ByteBuffer grown = ByteBuffer.allocate(capacity).order(buffer.order());
+		buffer.flip();
+		grown.put(buffer);
+		buffer = grown;
+	}
+
+	/**
+	 * Write everything buffered so far to the file. Does nothing for a writer
+	 * that writes to memory. A compressed writer keeps a part-filled block
+	 * until it fills up or the writer is closed
+	 */
+	public void flush() {
+		if (channel == null)
+			return;
+		buffer.flip();
+		this.drain(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Write all of a buffer to the file
+	 */
+	private void drain(ByteBuffer src) {
+		try {
+			while (src.hasRemaining()) {
+				flushed += channel.write(src);
+			}
+		} catch (IOException e) {
+			log.severe("Failed to write data to file: " + outputPath);
+			throw new HelixRuntimeException(Constants.ERR_RES_WRITE_FAIL, "Failed to write data to file: " + outputPath, e);
+		}
+	}
+
+	/**
+	 * Write the last block and the block index of a compressed file
+	 */
+	private void finishBlocks() {
 		try {
-			out.flush();
-			out.close();
+			((BlockWriteChannel) channel).finish();
 		} catch (IOException e) {
-			e.printStackTrace();
+			log.severe("Failed to write data to file: " + outputPath);
+			throw new HelixRuntimeException(Constants.ERR_RES_WRITE_FAIL, "Failed to write data to file: " + outputPath, e);
+		}
+	}
+
+	/**
+	 * Flush the output and close the file. The writer must not be used afterwards
+	 */
+	@Override
+	public void close() {
+		if (channel == null) {
+			buffer = null;
+			return;
+		}
+
+		try {
+			this.flush();
+			if (channel instanceof BlockWriteChannel)
+				this.finishBlocks();
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.severe("Failed to close file: " + outputPath);
+			}
+			channel = null;
+			BufferPool.release(buffer);
+			buffer = null;
 		}
 	}
 
+	/**
+	 * @return - number of bytes written so far, including ones not yet
+	 * flushed. Counts bytes before compression for a compressed writer
+	 */
+	public long size() {
+		return flushed + buffer.position();
+	}
+
+	/**
+	 * @return - whether or not this writer block-compresses its file
+	 */
+	public boolean isCompressed() {
+		return channel instanceof BlockWriteChannel;
+	}
+
+	/**
+	 * @return - whether or not this writer writes to memory rather than a file
+	 */
+	public boolean isInMemory() {
+		return channel == null;
+	}
+
+	/**
+	 * Copy out everything written to a memory writer
+	 * @return - a new array of every byte written
+	 * @throws IllegalStateException if the writer writes to a file
+	 */
+	public byte[] toByteArray() {
+		this.checkInMemory();
+		byte[] bytes = new byte[buffer.position()];
+		System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+		return bytes;
+	}
+
+	/**
+	 * Append everything written to a memory writer to another writer
+	 * @param other - writer to append to
+	 * @throws IllegalStateException if this writer writes to a file
+	 */
+	public void writeTo(BinaryWriter other) {
+		this.checkInMemory();
+		other.write(buffer.array(), 0, buffer.position());
+	}
+
+	/**
+	 * Throw away everything written to a memory writer, so it can be reused
+	 * @throws IllegalStateException if the writer writes to a file
+	 */
+	public void reset() {
+		this.checkInMemory();
+		buffer.clear();
+	}
+
+	private void checkInMemory() {
+		if (channel != null)
+			throw new IllegalStateException("Not an in-memory writer: " + outputPath);
+	}
+
+	public ByteOrder getOrder() {
+		return buffer.order();
+	}
+
+	/**
+	 * Set the byte order multi-byte values are written in
+	 * @param order - {@link ByteOrder#BIG_ENDIAN} (default) or {@link ByteOrder#LITTLE_ENDIAN}
+	 */
+	public void setOrder(ByteOrder order) {
+		buffer.order(order);
+	}
+
+	public String getOutputPath() {
+		return outputPath;
+	}
+
 	/**
 	 * Convert a long to a byte array
 	 * @param long
-	 * @return 2 bytes consisting of the long
+	 * @return 8 bytes consisting of the long, big-endian
 	 */
 	public byte[] longToByte(long x) {
 		byte[] result = new byte[8];
@@ -167,16 +575,17 @@ public class BinaryWriter {
 	        result[i] = (byte)(x & 0xFF);
 	        x >>= 8;
 	    }
-	    
+
 	    return result;
 	}
-	
+
 	/**
 	 * Write a long
 	 * @param num
+	 *
+	 * @see {@link BinaryWriter#writeLong}
 	 */
 	public void write(long num) {
-		byte[] bytes = this.longToByte(num);
-		this.write(bytes);
+		this.writeLong(num);
 	}
 }
@@ -0,0 +1,95 @@
+package io.sly.helix.utils.io;
+
+/**
+ * Packs booleans and small numbers such as enum ordinals into as few bits as
+ * they need, and writes them to a {@link BinaryWriter} a byte at a time
+ * <br><br>
+ * Bits fill each byte from the lowest up, the same as
+ * {@link BinaryWriter#writeBools}. Call {@link BitPacker#flush} after the
+ * last field, which pads the last byte with zeroes. Read the fields back in
+ * the same order with a {@link BitUnpacker}
+ * <pre>
+ * BitPacker bits = new BitPacker(writer);
+ * bits.writeBoolean(visible);
+ * bits.writeEnum(state);
+ * bits.write(frame, 4);
+ * bits.flush();
+ * </pre>
+ * @author Sly
+ *
+ * @see {@link BitUnpacker}
+ */
+public final class BitPacker {
+
+	private final BinaryWriter out;
+
+	/**
+	 * Bits not written yet, lowest first
+	 */
+	private long bits;
+	private int count;
+
+	/**
+	 * @param out - writer to write the packed bytes to
+	 */
+	public BitPacker(BinaryWriter out) {
+		this.out = out;
+	}
+
+	/**
+	 * Get the number of bits needed to tell some number of values apart
+	 * @param values - number of different values, such as the constants of an enum
+	 * @return - bits needed, 0 for a single value
+	 */
+	public static int bitsFor(int values) {
+		return values <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(values - 1);
+	}
+
+	/**
+	 * Write a single bit
+	 */
+	public void writeBoolean(boolean value) {
+		this.write(value ? 1 : 0, 1);
+	}
+
+	/**
+	 * Write the lowest bits of a number
+	 * @param value - value to write, bits above bitCount are ignored
+	 * @param bitCount - number of bits to write, 0 to 32
+	 */
+	public void write(int value, int bitCount) {
+		if (bitCount < 0 || bitCount > Integer.SIZE)
+			throw new IllegalArgumentException("Can't write " + bitCount + " bits");
+		if (bitCount == 0)
+			return;
+
+		bits |= (value & (-1L >>> (Long.SIZE - bitCount))) << count;
+		count += bitCount;
+		while (count >= Byte.SIZE) {
+			out.writeByte((int) bits);
+			bits >>>= Byte.SIZE;
+			count -= Byte.SIZE;
+		}
+	}
+
+	/**
+	 * Write the ordinal of an enum constant in as few bits as its enum needs
+	 * @param value - constant to write, not null
+	 *
+	 * @see {@link BitUnpacker#readEnum}
+	 */
+	public void writeEnum(Enum<?> value) {
+		this.write(value.ordinal(), bitsFor(value.getDeclaringClass().getEnumConstants().length));
+	}
+
+	/**
+	 * Write any bits left over, padding the last byte with zeroes. Anything
+	 * written afterwards starts on a new byte
+	 */
+	public void flush() {
+		if (count > 0)
+			out.writeByte((int) bits);
+		bits = 0;
+		count = 0;
+	}
+}
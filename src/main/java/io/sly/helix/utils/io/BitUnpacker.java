@@ -0,0 +1,77 @@
+package io.sly.helix.utils.io;
+
+/**
+ * Reads back the fields written by a {@link BitPacker}, a byte at a time
+ * from a {@link BinaryCursor}
+ * <br><br>
+ * Read the fields in the same order and with the same sizes they were
+ * written, then call {@link BitUnpacker#align} to skip the padding before
+ * reading anything else from the cursor
+ * @author Sly
+ *
+ * @see {@link BitPacker}
+ */
+public final class BitUnpacker {
+
+	private final BinaryCursor in;
+
+	/**
+	 * Bits read from the cursor but not yet returned, lowest first
+	 */
+	private long bits;
+	private int count;
+
+	/**
+	 * @param in - cursor at the first packed byte
+	 */
+	public BitUnpacker(BinaryCursor in) {
+		this.in = in;
+	}
+
+	/**
+	 * Read a single bit
+	 */
+	public boolean readBoolean() {
+		return this.read(1) != 0;
+	}
+
+	/**
+	 * Read a number written with {@link BitPacker#write}
+	 * @param bitCount - number of bits it was written with, 0 to 32
+	 * @return - the number, with the bits above bitCount clear
+	 */
+	public int read(int bitCount) {
+		if (bitCount < 0 || bitCount > Integer.SIZE)
+			throw new IllegalArgumentException("Can't read " + bitCount + " bits");
+
+		while (count < bitCount) {
+			bits |= (in.readByte() & 0xFFL) << count;
+			count += Byte.SIZE;
+		}
+		int value = (int) (bits & (-1L >>> (Long.SIZE - bitCount)));
+		if (bitCount == 0)
+			value = 0;
+		bits >>>= bitCount;
+		count -= bitCount;
+		return value;
+	}
+
+	/**
+	 * Read an enum constant written with {@link BitPacker#writeEnum}
+	 * @param values - constants of the enum, as returned by its values()
+	 * @return - the constant, or null if the ordinal read is past the end of values
+	 */
+	public <E extends Enum<E>> E readEnum(E[] values) {
+		int ordinal = this.read(BitPacker.bitsFor(values.length));
+		return ordinal < values.length ? values[ordinal] : null;
+	}
+
+	/**
+	 * Drop the padding at the end of the current byte, so that the cursor can
+	 * be read from directly again
+	 */
+	public void align() {
+		bits = 0;
+		count = 0;
+	}
+}
@@ -0,0 +1,316 @@
+package io.sly.helix.utils.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import io.sly.helix.Constants;
+import io.sly.helix.exception.HelixRuntimeException;
+
+/**
+ * Read-only channel over the uncompressed contents of a file written by a
+ * {@link BlockWriteChannel}. Only the blocks that are read from are
+ * decompressed, and the last few are kept around, so reading through the
+ * file in order or jumping around a small part of it stays cheap
+ * <br><br>
+ * Not safe to use from more than one thread at once
+ * @author Sly
+ *
+ * @see {@link BinaryReader}, {@link BinaryCursor}
+ */
+final class BlockReadChannel implements SeekableByteChannel {
+
+	/**
+	 * Number of decompressed blocks kept in memory
+	 */
+	static final int CACHED_BLOCKS = 4;
+
+	private final FileChannel file;
+	private final String path;
+
+	private final int blockSize;
+	private final long size;
+	private final long[] positions;
+	private final int[] lengths;
+	private final byte[] methods;
+
+	/**
+	 * Decompressed blocks, along with the index of each, -1 for none
+	 */
+	private final ByteBuffer[] cached = new ByteBuffer[CACHED_BLOCKS];
+	private final int[] cachedIndex = new int[CACHED_BLOCKS];
+	private int nextEvicted;
+
+	/**
+	 * Holds a value that is split between two blocks
+	 */
+	private final ByteBuffer straddle = ByteBuffer.allocate(Long.BYTES);
+
+	private final Inflater inflater = new Inflater();
+	private byte[] compressed = new byte[0];
+
+	private ByteOrder order = ByteOrder.BIG_ENDIAN;
+	private long position;
+
+	/**
+	 * Check whether a file was written by a {@link BlockWriteChannel}
+	 * @param file - file to check, its position is left alone
+	 */
+	static boolean isCompressed(FileChannel file) throws IOException {
+		if (file.size() < BlockWriteChannel.HEADER + BlockWriteChannel.TRAILER)
+			return false;
+		ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+		readFully(file, magic, 0);
+		return magic.getInt(0) == BlockWriteChannel.MAGIC;
+	}
+
+	/**
+	 * Read the index of a block-compressed file
+	 * @param file - file to read, closed along with this channel
+	 * @param path - path of the file, for errors
+	 * @throws IOException if the file is cut short or is not block-compressed
+	 */
+	BlockReadChannel(FileChannel file, String path) throws IOException {
+		this.file = file;
+		this.path = path;
+
+		long fileSize = file.size();
+		ByteBuffer header = ByteBuffer.allocate(BlockWriteChannel.HEADER);
+		readFully(file, header, 0);
+		ByteBuffer trailer = ByteBuffer.allocate(BlockWriteChannel.TRAILER);
+		readFully(file, trailer, fileSize - BlockWriteChannel.TRAILER);
+
+		if (header.getInt(0) != BlockWriteChannel.MAGIC || trailer.getInt(BlockWriteChannel.TRAILER - Integer.BYTES) != BlockWriteChannel.MAGIC)
+			throw new IOException("Compressed file is incomplete: " + path);
+		int version = header.getShort(Integer.BYTES) & 0xFFFF;
+		if (version > BlockWriteChannel.VERSION)
+			throw new IOException("Compressed file " + path + " is version " + version + ", newer than " + BlockWriteChannel.VERSION);
+
+		blockSize = header.getInt(Integer.BYTES + Short.BYTES);
+		long indexPosition = trailer.getLong(0);
+		int blockCount = trailer.getInt(Long.BYTES);
+		size = trailer.getLong(Long.BYTES + Integer.BYTES);
+		if (blockSize <= 0 || blockCount < 0
+				|| indexPosition + (long) blockCount * BlockWriteChannel.INDEX_ENTRY != fileSize - BlockWriteChannel.TRAILER
+				|| size > (long) blockCount * blockSize)
+			throw new IOException("Compressed file has a damaged index: " + path);
+
+		ByteBuffer index = ByteBuffer.allocate(blockCount * BlockWriteChannel.INDEX_ENTRY);
+		readFully(file, index, indexPosition);
+		positions = new long[blockCount];
+		lengths = new int[blockCount];
+		methods = new byte[blockCount];
+		for (int i = 0; i < blockCount; i++) {
+			positions[i] = index.getLong();
+			lengths[i] = index.getInt();
+			int rawLength = index.getInt();
+			methods[i] = index.get();
+			if (rawLength != this.rawLength(i))
+				throw new IOException("Compressed file has a damaged index: " + path);
+		}
+
+		for (int i = 0; i < CACHED_BLOCKS; i++) {
+			cachedIndex[i] = -1;
+		}
+	}
+
+	private static void readFully(FileChannel file, ByteBuffer dst, long position) throws IOException {
+		while (dst.hasRemaining()) {
+			int n = file.read(dst, position);
+			if (n < 0)
+				throw new IOException("Unexpected end of file");
+			position += n;
+		}
+		dst.flip();
+	}
+
+	private int rawLength(int index) {
+		return (int) Math.min(blockSize, size - (long) index * blockSize);
+	}
+
+	/**
+	 * Get a decompressed block, decompressing it if it is not cached
+	 */
+	private ByteBuffer block(int index) throws IOException {
+		for (int i = 0; i < CACHED_BLOCKS; i++) {
+			if (cachedIndex[i] == index)
+				return cached[i];
+		}
+
+		int slot = nextEvicted;
+		nextEvicted = (nextEvicted + 1) % CACHED_BLOCKS;
+
+		int rawLength = this.rawLength(index);
+		ByteBuffer block = cached[slot];
+		if (block == null || block.capacity() < rawLength)
+			block = ByteBuffer.allocate(blockSize);
+		// Marked empty until it is filled, in case decompressing fails
+		cachedIndex[slot] = -1;
+
+		if (compressed.length < lengths[index])
+			compressed = new byte[Math.max(lengths[index], blockSize)];
+		ByteBuffer stored = ByteBuffer.wrap(compressed, 0, lengths[index]);
+		readFully(file, stored, positions[index]);
+
+		if (methods[index] == BlockWriteChannel.STORED) {
+			if (lengths[index] != rawLength)
+				throw new IOException("Damaged block " + index + " in " + path);
+			System.arraycopy(compressed, 0, block.array(), 0, rawLength);
+		} else {
+			inflater.reset();
+			inflater.setInput(compressed, 0, lengths[index]);
+			try {
+				int n = 0;
+				while (n < rawLength && !inflater.finished()) {
+					int inflated = inflater.inflate(block.array(), n, rawLength - n);
+					if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+						break;
+					n += inflated;
+				}
+				if (n != rawLength)
+					throw new IOException("Damaged block " + index + " in " + path);
+			} catch (DataFormatException e) {
+				throw new IOException("Damaged block " + index + " in " + path, e);
+			}
+		}
+
+		block.clear().limit(rawLength);
+		block.order(order);
+		cached[slot] = block;
+		cachedIndex[slot] = index;
+		return block;
+	}
+
+	/**
+	 * Find some bytes of the uncompressed data, decompressing the blocks they
+	 * are in if needed
+	 * @param position - position of the first byte in the uncompressed data
+	 * @param length - number of bytes, up to 8
+	 * @return - a buffer in the channel's byte order, with its position at the first byte
+	 * @throws HelixRuntimeException if the bytes are outside the data, or could not be read
+	 */
+	ByteBuffer locate(long position, int length) {
+		if (position < 0 || position + length > size)
+			throw new IndexOutOfBoundsException("Position " + position + " outside of " + path);
+
+		try {
+			int index = (int) (position / blockSize);
+			int offset = (int) (position % blockSize);
+			ByteBuffer block = this.block(index);
+			if (offset + length <= block.limit()) {
+				block.position(offset);
+				return block;
+			}
+
+			straddle.clear();
+			straddle.order(order);
+			for (int i = 0; i < length; i++) {
+				straddle.put(this.block((int) ((position + i) / blockSize)).get((int) ((position + i) % blockSize)));
+			}
+			straddle.position(0);
+			return straddle;
+		} catch (IOException e) {
+			throw new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL, "Failed to read file: " + path, e);
+		}
+	}
+
+	/**
+	 * Copy bytes of the uncompressed data into an array
+	 * @param position - position of the first byte in the uncompressed data
+	 * @throws HelixRuntimeException if the bytes are outside the data, or could not be read
+	 */
+	void copy(long position, byte[] out, int offset, int length) {
+		if (position < 0 || position + length > size)
+			throw new IndexOutOfBoundsException("Position " + position + " outside of " + path);
+
+		try {
+			while (length > 0) {
+				ByteBuffer block = this.block((int) (position / blockSize));
+				int start = (int) (position % blockSize);
+				int n = Math.min(length, block.limit() - start);
+				System.arraycopy(block.array(), start, out, offset, n);
+				position += n;
+				offset += n;
+				length -= n;
+			}
+		} catch (IOException e) {
+			throw new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL, "Failed to read file: " + path, e);
+		}
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		if (!file.isOpen())
+			throw new ClosedChannelException();
+		if (position >= size)
+			return -1;
+
+		ByteBuffer block = this.block((int) (position / blockSize));
+		int start = (int) (position % blockSize);
+		int n = Math.min(dst.remaining(), block.limit() - start);
+		dst.put(block.array(), start, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public int write(ByteBuffer src) {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public long position() {
+		return position;
+	}
+
+	@Override
+	public SeekableByteChannel position(long newPosition) {
+		if (newPosition < 0)
+			throw new IllegalArgumentException("Negative position: " + newPosition);
+		position = newPosition;
+		return this;
+	}
+
+	/**
+	 * @return - length of the data uncompressed
+	 */
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long size) {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return file.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!file.isOpen())
+			return;
+		inflater.end();
+		file.close();
+	}
+
+	/**
+	 * Set the byte order of the buffers returned by {@link BlockReadChannel#locate}
+	 */
+	void setOrder(ByteOrder order) {
+		this.order = order;
+		for (int i = 0; i < CACHED_BLOCKS; i++) {
+			if (cached[i] != null)
+				cached[i].order(order);
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package io.sly.helix.utils.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Deflater;
+
+/**
+ * Channel that splits everything written to it into fixed-size blocks and
+ * compresses each one on its own, on a pool of background threads. Blocks
+ * are written to the file in order as they finish, followed by an index of
+ * where each one is, so that a {@link BlockReadChannel} can decompress just
+ * the blocks it needs
+ * <br><br>
+ * Layout (big-endian):
+ * <pre>
+ * int    {@link BlockWriteChannel#MAGIC}
+ * short  {@link BlockWriteChannel#VERSION}
+ * int    size of every block but the last, uncompressed
+ * ...    the blocks
+ * index: for each block:
+ *          long   position of the block in the file
+ *          int    length of the block in the file
+ *          int    length of the block uncompressed
+ *          byte   {@link BlockWriteChannel#STORED} or {@link BlockWriteChannel#DEFLATED}
+ * long   position of the index
+ * int    number of blocks
+ * long   length of all the data uncompressed
+ * int    {@link BlockWriteChannel#MAGIC}
+ * </pre>
+ * Nothing is readable until {@link BlockWriteChannel#finish} writes the index
+ * @author Sly
+ *
+ * @see {@link BinaryWriter#BinaryWriter(String, boolean, int, boolean, boolean)}
+ */
+final class BlockWriteChannel implements WritableByteChannel {
+
+	/**
+	 * First and last 4 bytes of every block-compressed file ("HLXZ")
+	 */
+	static final int MAGIC = 0x484C585A;
+	static final int VERSION = 1;
+
+	static final int HEADER = Integer.BYTES + Short.BYTES + Integer.BYTES;
+	static final int INDEX_ENTRY = Long.BYTES + 2 * Integer.BYTES + Byte.BYTES;
+	static final int TRAILER = Long.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+	/**
+	 * Block written as is, because compressing it did not make it smaller
+	 */
+	static final byte STORED = 0;
+	static final byte DEFLATED = 1;
+
+	/**
+	 * Compression level blocks are written with. Saves are mostly repeated
+	 * names, padding and similar numbers, which the fastest level already
+	 * shrinks well
+	 */
+	static final int LEVEL = Deflater.BEST_SPEED;
+
+	private static ExecutorService compressors;
+	private static int compressorCount;
+
+	private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater(LEVEL);
+		}
+	};
+
+	/**
+	 * A block once compressed
+	 */
+	private static final class Block {
+		final byte[] input;
+		final byte[] data;
+		final int length;
+		final int rawLength;
+		final byte method;
+
+		Block(byte[] input, byte[] data, int length, int rawLength, byte method) {
+			this.input = input;
+			this.data = data;
+			this.length = length;
+			this.rawLength = rawLength;
+			this.method = method;
+		}
+	}
+
+	private final FileChannel file;
+	private final int blockSize;
+
+	/**
+	 * Block being filled, and how much of it is
+	 */
+	private byte[] block;
+	private int filled;
+
+	/**
+	 * Blocks being compressed, in the order they were written
+	 */
+	private final ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+	private final int maxPending;
+
+	/**
+	 * Block arrays done with, to fill again
+	 */
+	private final ArrayDeque<byte[]> spare = new ArrayDeque<>();
+
+	private final BinaryWriter index = new BinaryWriter(1024);
+	/**
+	 * Position in the file of the next block
+	 */
+	private long position;
+	private long rawSize;
+	private int blockCount;
+
+	/**
+	 * @param file - file to write to, from its current position
+	 * @param blockSize - uncompressed size of each block
+	 * @throws IOException if the header could not be written
+	 */
+	BlockWriteChannel(FileChannel file, int blockSize) throws IOException {
+		this.file = file;
+		this.blockSize = blockSize;
+		this.block = new byte[blockSize];
+		this.maxPending = 2 * getCompressorCount();
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		header.putInt(MAGIC).putShort((short) VERSION).putInt(blockSize).flip();
+		this.writeFully(header);
+		position = HEADER;
+	}
+
+	/**
+	 * Copy bytes into the current block, handing each block off to be
+	 * compressed as it fills up
+	 */
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		if (!file.isOpen())
+			throw new ClosedChannelException();
+
+		int written = src.remaining();
+		while (src.hasRemaining()) {
+			int n = Math.min(src.remaining(), blockSize - filled);
+			src.get(block, filled, n);
+			filled += n;
+			if (filled == blockSize)
+				this.submit();
+		}
+		return written;
+	}
+
+	private void submit() throws IOException {
+		final byte[] input = block;
+		final int length = filled;
+		pending.add(getCompressors().submit(new Callable<Block>() {
+			@Override
+			public Block call() {
+				return compress(input, length);
+			}
+		}));
+
+		block = spare.isEmpty() ? new byte[blockSize] : spare.poll();
+		filled = 0;
+
+		// Don't let the game run ahead of the compressors by more than a few blocks
+		while (pending.size() > maxPending) {
+			this.writeNext();
+		}
+	}
+
+	private static Block compress(byte[] input, int length) {
+		Deflater deflater = deflaters.get();
+		deflater.reset();
+		deflater.setInput(input, 0, length);
+		deflater.finish();
+
+		byte[] out = new byte[length];
+		int n = 0;
+		while (!deflater.finished() && n < out.length) {
+			n += deflater.deflate(out, n, out.length - n);
+		}
+		if (!deflater.finished())
+			return new Block(input, input, length, length, STORED);
+		return new Block(input, out, n, length, DEFLATED);
+	}
+
+	/**
+	 * Wait for the oldest block to be compressed, then write it
+	 */
+	private void writeNext() throws IOException {
+		Block next;
+		try {
+			next = pending.poll().get();
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to compress block " + blockCount, e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing block " + blockCount, e);
+		}
+
+		this.writeFully(ByteBuffer.wrap(next.data, 0, next.length));
+		index.writeLong(position);
+		index.writeInt(next.length);
+		index.writeInt(next.rawLength);
+		index.writeByte(next.method);
+
+		position += next.length;
+		rawSize += next.rawLength;
+		blockCount++;
+		spare.add(next.input);
+	}
+
+	private void writeFully(ByteBuffer src) throws IOException {
+		while (src.hasRemaining()) {
+			file.write(src);
+		}
+	}
+
+	/**
+	 * Write the last block, the index and the trailer
+	 * @throws IOException if any of it could not be written
+	 */
+	void finish() throws IOException {
+		if (!file.isOpen())
+			return;
+
+		if (filled > 0)
+			this.submit();
+		while (!pending.isEmpty()) {
+			this.writeNext();
+		}
+
+		long indexPosition = position;
+		this.writeFully(ByteBuffer.wrap(index.toByteArray()));
+
+		ByteBuffer trailer = ByteBuffer.allocate(TRAILER);
+		trailer.putLong(indexPosition).putInt(blockCount).putLong(rawSize).putInt(MAGIC).flip();
+		this.writeFully(trailer);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return file.isOpen();
+	}
+
+	/**
+	 * Close the file, without writing the index if {@link BlockWriteChannel#finish}
+	 * was not called first
+	 */
+	@Override
+	public void close() throws IOException {
+		for (Future<Block> block : pending) {
+			block.cancel(false);
+		}
+		pending.clear();
+		file.close();
+	}
+
+	private static synchronized ExecutorService getCompressors() {
+		if (compressors == null) {
+			compressorCount = Runtime.getRuntime().availableProcessors();
+			compressors = Executors.newFixedThreadPool(compressorCount, new ThreadFactory() {
+				private int count;
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "helix-deflate-" + count++);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return compressors;
+	}
+
+	private static synchronized int getCompressorCount() {
+		getCompressors();
+		return compressorCount;
+	}
+}
@@ -0,0 +1,93 @@
+package io.sly.helix.utils.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of direct {@link ByteBuffer}s, so that reading and writing small files
+ * does not allocate native memory each time. Buffers are grouped by capacity,
+ * rounded up to a power of two
+ *
+ * @author Sly
+ *
+ */
+public final class BufferPool {
+
+	/**
+	 * Smallest buffer handed out (bytes)
+	 */
+	public static final int MIN_CAPACITY = 1 << 8;
+	/**
+	 * Largest buffer kept for reuse (bytes). Bigger buffers are left to the GC
+	 */
+	public static final int MAX_POOLED_CAPACITY = 1 << 20;
+	/**
+	 * Most free buffers kept of each capacity
+	 */
+	private static final int MAX_FREE_PER_SIZE = 8;
+
+	private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_CAPACITY);
+	private static final int SIZES = Integer.numberOfTrailingZeros(MAX_POOLED_CAPACITY) - MIN_SHIFT + 1;
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static final ArrayDeque<ByteBuffer>[] free = new ArrayDeque[SIZES];
+
+	static {
+		for (int i = 0; i < SIZES; i++) {
+			free[i] = new ArrayDeque<>();
+		}
+	}
+
+	private BufferPool() {
+	}
+
+	/**
+	 * Get a cleared direct buffer that holds at least some number of bytes
+	 *
+	 * @param capacity - bytes needed
+	 * @return - a buffer with its limit set to capacity
+	 */
+	public static ByteBuffer acquire(int capacity) {
+		int size = sizeOf(capacity);
+		ByteBuffer buffer = null;
+		if (size < SIZES) {
+			synchronized (free) {
+				buffer = free[size].poll();
+			}
+		}
+		if (buffer == null)
+			buffer = ByteBuffer.allocateDirect(Math.max(Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1, MIN_CAPACITY));
+
+		buffer.clear();
+		buffer.limit(capacity);
+		return buffer;
+	}
+
+	/**
+	 * Give a buffer back to the pool. It must not be used afterwards
+	 *
+	 * @param buffer - buffer from {@link BufferPool#acquire}
+	 */
+	public static void release(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect() || Integer.bitCount(buffer.capacity()) != 1)
+			return;
+
+		int size = sizeOf(buffer.capacity());
+		if (size >= SIZES)
+			return;
+
+		synchronized (free) {
+			if (free[size].size() < MAX_FREE_PER_SIZE)
+				free[size].push(buffer);
+		}
+	}
+
+	/**
+	 * Index of the size class a capacity falls in
+	 */
+	private static int sizeOf(int capacity) {
+		if (capacity <= MIN_CAPACITY)
+			return 0;
+		return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+	}
+}
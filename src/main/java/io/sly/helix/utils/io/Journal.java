@@ -0,0 +1,627 @@
+package io.sly.helix.utils.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import io.sly.helix.Constants;
+import io.sly.helix.exception.HelixRuntimeException;
+
+/**
+ * Append-only file of checksummed records that survives the game being
+ * killed part way through writing it
+ * <br><br>
+ * {@link Journal#append} only queues a record. A background thread writes
+ * queued records out and syncs them to disk in groups, once
+ * {@link Journal#getGroupSize} are queued, {@link Journal#getGroupDelay}
+ * has passed, or someone calls {@link Journal#commit}, so many appends share
+ * the cost of a single sync. A crash loses at most the records of the group
+ * being written
+ * <br><br>
+ * When a journal is opened, records are checked against their checksums. A
+ * record that is cut short or damaged, and anything after it, is the torn
+ * end of a write that never finished, and is cut off the file. The rest can
+ * then be read back with {@link Journal#replay}
+ * <br><br>
+ * Layout (big-endian):
+ * <pre>
+ * int    {@link Journal#MAGIC}
+ * short  {@link Journal#VERSION}
+ * records, each:
+ *   int    length of the data
+ *   int    CRC32 of the length and the data
+ *   ...    the data
+ * </pre>
+ * The length is part of the checksum so that a run of zeros, which a crash
+ * can leave at the end of the file, does not pass for empty records. Version
+ * 1 journals only checksummed the data; they are still read, but can't hold
+ * empty records
+ * To keep the journal from growing forever, write the state it leads up to
+ * somewhere else with {@link Journal#replaceAtomically}, then {@link Journal#reset} it
+ * @author Sly
+ *
+ * @see {@link io.sly.helix.game.save.SaveChain}
+ */
+public class Journal implements Closeable {
+	private static final Logger log = Logger.getLogger(Journal.class.getName());
+
+	/**
+	 * First 4 bytes of every journal ("HLXJ")
+	 */
+	public static final int MAGIC = 0x484C584A;
+	public static final int VERSION = 2;
+
+	/**
+	 * Default number of queued records that makes the journal sync straight away
+	 */
+	public static final int DEFAULT_GROUP_SIZE = 64;
+	/**
+	 * Default longest a record waits to be synced (ms)
+	 */
+	public static final long DEFAULT_GROUP_DELAY = 50;
+
+	private static final int HEADER = Integer.BYTES + Short.BYTES;
+	private static final int RECORD_HEADER = 2 * Integer.BYTES;
+
+	/**
+	 * Called with each record by {@link Journal#replay}
+	 */
+	public interface RecordHandler {
+		/**
+		 * @param record - cursor over the data of the record
+		 * @param index - index of the record in the journal, from 0
+		 */
+		public void record(BinaryCursor record, int index);
+	}
+
+	public final String filePath;
+
+	private final FileChannel channel;
+	private final CRC32 crc = new CRC32();
+	/**
+	 * Version of the open file, which records are checked and written in
+	 */
+	private int version = VERSION;
+
+	/**
+	 * Records queued but not yet written, and a second buffer to swap in
+	 * while they are
+	 */
+	private ByteBuffer queued = ByteBuffer.allocate(1 << 12);
+	private ByteBuffer writing = ByteBuffer.allocate(1 << 12);
+
+	/**
+	 * Records appended, records synced to disk, and records in the file when
+	 * it was opened or last reset
+	 */
+	private long appended;
+	private long synced;
+	private int recovered;
+	private long requested;
+
+	private int groupSize = DEFAULT_GROUP_SIZE;
+	private long groupDelay = DEFAULT_GROUP_DELAY;
+
+	private final Thread flusher;
+	private boolean closing;
+	private IOException failure;
+
+	/**
+	 * Open a journal (relative to absolute directory), creating it if it
+	 * does not exist yet
+	 * @param filePath - path of the journal
+	 *
+	 * @see {@link Constants#ABS_PATH}
+	 */
+	public Journal(String filePath) {
+		this(filePath, true);
+	}
+
+	/**
+	 * Open a journal, creating it if it does not exist yet, and cut off any
+	 * torn records at its end
+	 * @param filePath - path of the journal
+	 * @param relative - whether or not the path is relative to the absolute directory
+	 * @throws HelixRuntimeException if the file cannot be opened, or is not a journal
+	 *
+	 * @see {@link Constants#ABS_PATH}
+	 */
+	public Journal(String filePath, boolean relative) {
+		if (relative)
+			filePath = Constants.ABS_PATH + filePath;
+		this.filePath = filePath;
+
+		try {
+			channel = FileChannel.open(new File(filePath).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+		} catch (IOException e) {
+			log.severe("Failed to open file: " + filePath);
+			throw new HelixRuntimeException(Constants.ERR_RES_WRITE_FAIL, "Failed to open file: " + filePath, e);
+		}
+
+		try {
+			this.recover();
+		} catch (IOException | RuntimeException e) {
+			try {
+				channel.close();
+			} catch (IOException closeFailed) {
+				log.severe("Failed to close file: " + filePath);
+			}
+			if (e instanceof HelixRuntimeException)
+				throw (HelixRuntimeException) e;
+			throw new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL, "Failed to read journal: " + filePath, e);
+		}
+
+		flusher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, "helix-journal");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Check every record, and cut the file off after the last whole one
+	 */
+	private void recover() throws IOException {
+		long size = channel.size();
+		if (size < HEADER) {
+			// Never got past creating the file
+			this.writeHeader();
+			return;
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		readFully(header, 0);
+		if (header.getInt(0) != MAGIC)
+			throw new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL, "Not a journal: " + filePath);
+		version = header.getShort(Integer.BYTES) & 0xFFFF;
+		if (version > VERSION)
+			throw new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL,
+					"Journal " + filePath + " is version " + version + ", newer than " + VERSION);
+
+		long end = HEADER;
+		int count = 0;
+		ByteBuffer data = ByteBuffer.allocate(1 << 12);
+		ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER);
+		while (end + RECORD_HEADER <= size) {
+			recordHeader.clear();
+			readFully(recordHeader, end);
+			int length = recordHeader.getInt(0);
+			if (length < 0 || end + RECORD_HEADER + length > size)
+				break;
+			// Without the length in its checksum, a zeroed tail reads as empty records with a valid CRC
+			if (length == 0 && version < 2)
+				break;
+
+			if (data.capacity() < length)
+				data = ByteBuffer.allocate(length);
+			data.clear().limit(length);
+			readFully(data, end + RECORD_HEADER);
+			if (this.checksum(data.array(), 0, length) != recordHeader.getInt(Integer.BYTES))
+				break;
+
+			end += RECORD_HEADER + length;
+			count++;
+		}
+
+		if (end < size) {
+			log.warning("Discarding " + (size - end) + " bytes of unfinished records at the end of " + filePath);
+			channel.truncate(end);
+			channel.force(false);
+		}
+		channel.position(end);
+		recovered = count;
+		appended = count;
+		synced = count;
+		requested = count;
+	}
+
+	private void writeHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		header.putInt(MAGIC).putShort((short) VERSION).flip();
+		version = VERSION;
+		channel.truncate(0);
+		channel.position(0);
+		while (header.hasRemaining()) {
+			channel.write(header);
+		}
+		channel.force(true);
+	}
+
+	private void readFully(ByteBuffer dst, long position) throws IOException {
+		while (dst.hasRemaining()) {
+			int n = channel.read(dst, position);
+			if (n < 0)
+				throw new IOException("Unexpected end of file");
+			position += n;
+		}
+		dst.flip();
+	}
+
+	private int checksum(byte[] data, int offset, int length) {
+		crc.reset();
+		if (version >= 2) {
+			crc.update(length >>> 24);
+			crc.update(length >>> 16);
+			crc.update(length >>> 8);
+			crc.update(length);
+		}
+		crc.update(data, offset, length);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Queue a record to be written with the next group
+	 * @param data - bytes of the record
+	 * @param offset - index in data the record starts at
+	 * @param length - length of the record
+	 * @return - number of records appended so far, to pass to {@link Journal#commit(long)}
+	 * @throws HelixRuntimeException if writing an earlier group failed, or the journal is closed
+	 */
+	public synchronized long append(byte[] data, int offset, int length) {
+		this.checkWritable();
+
+		int needed = RECORD_HEADER + length;
+		if (queued.remaining() < needed) {
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(queued.capacity() * 2, queued.position() + needed));
+			queued.flip();
+			grown.put(queued);
+			queued = grown;
+		}
+		queued.putInt(length);
+		queued.putInt(this.checksum(data, offset, length));
+		queued.put(data, offset, length);
+
+		appended++;
+		// Wake the flusher to start the group, or to write it if it's full
+		if (queued.position() == needed || appended - synced >= groupSize)
+			this.notifyAll();
+		return appended;
+	}
+
+	/**
+	 * Queue everything written to a memory writer as a record
+	 * @param record - in-memory writer holding the record
+	 * @return - number of records appended so far, to pass to {@link Journal#commit(long)}
+	 */
+	public long append(BinaryWriter record) {
+		byte[] data = record.toByteArray();
+		return this.append(data, 0, data.length);
+	}
+
+	/**
+	 * Wait until every record appended so far is synced to disk
+	 * @throws HelixRuntimeException if writing them failed
+	 */
+	public void commit() {
+		long target;
+		synchronized (this) {
+			target = appended;
+		}
+		this.commit(target);
+	}
+
+	/**
+	 * Wait until some number of records are synced to disk, writing them
+	 * along with anything else queued without waiting for the group to fill
+	 * @param records - value returned by {@link Journal#append}
+	 * @throws HelixRuntimeException if writing them failed
+	 */
+	public synchronized void commit(long records) {
+		requested = Math.max(requested, records);
+		this.notifyAll();
+		boolean interrupted = false;
+		while (synced < records && failure == null && !closing) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (synced < records)
+			this.checkWritable();
+	}
+
+	/**
+	 * Write and sync queued records in groups, until closed. Runs on the flusher thread
+	 */
+	private void flush() {
+		while (true) {
+			long target;
+			synchronized (this) {
+				try {
+					while (!closing && appended == synced) {
+						this.wait();
+					}
+					// Give the group time to fill, unless someone is waiting on it
+					long deadline = System.currentTimeMillis() + groupDelay;
+					while (!closing && appended - synced < groupSize && requested <= synced) {
+						long wait = deadline - System.currentTimeMillis();
+						if (wait <= 0)
+							break;
+						this.wait(wait);
+					}
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (appended == synced)
+					return;
+
+				// Swap buffers so that appends carry on while the group is written
+				ByteBuffer group = queued;
+				queued = writing;
+				queued.clear();
+				writing = group;
+				target = appended;
+			}
+
+			try {
+				writing.flip();
+				while (writing.hasRemaining()) {
+					channel.write(writing);
+				}
+				channel.force(false);
+			} catch (IOException e) {
+				log.severe("Failed to write journal: " + filePath);
+				synchronized (this) {
+					failure = e;
+					this.notifyAll();
+				}
+				return;
+			}
+
+			synchronized (this) {
+				synced = target;
+				this.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Read back every record in the journal, oldest first. Records appended
+	 * since it was opened are synced first. Nothing may be appended until it returns
+	 * @param handler - called with each record
+	 * @return - number of records read
+	 */
+	public int replay(RecordHandler handler) {
+		this.commit();
+
+		long end;
+		try {
+			end = channel.size();
+		} catch (IOException e) {
+			throw new HelixRuntimeException(Constants.ERR_RES_LOAD_FAIL, "Failed to read journal: " + filePath, e);
+		}
+
+		try (BinaryCursor in = new BinaryCursor(filePath, new ReplayChannel(channel), BinaryCursor.DEFAULT_BUFFER_SIZE)) {
+			in.skip(HEADER);
+			int index = 0;
+			while (in.getPosition() + RECORD_HEADER <= end) {
+				int length = in.readInt();
+				in.skip(Integer.BYTES);
+				ByteBuffer data = ByteBuffer.wrap(in.readBytes(length));
+				handler.record(new BinaryCursor(filePath + "#" + index, data), index);
+				index++;
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Drop every record, such as once the state they lead up to has been
+	 * saved in full
+	 * @throws HelixRuntimeException if the journal could not be emptied
+	 */
+	public void reset() {
+		while (true) {
+			this.commit();
+			synchronized (this) {
+				// Appended to since, so the flusher may be writing
+				if (appended != synced)
+					continue;
+
+				this.checkWritable();
+				try {
+					this.writeHeader();
+				} catch (IOException e) {
+					log.severe("Failed to reset journal: " + filePath);
+					throw new HelixRuntimeException(Constants.ERR_RES_WRITE_FAIL, "Failed to reset journal: " + filePath, e);
+				}
+				recovered = 0;
+				appended = 0;
+				synced = 0;
+				requested = 0;
+				return;
+			}
+		}
+	}
+
+	private void checkWritable() {
+		if (failure != null)
+			throw new HelixRuntimeException(Constants.ERR_RES_WRITE_FAIL, "Failed to write journal: " + filePath, failure);
+		if (closing)
+			throw new HelixRuntimeException(Constants.ERR_RES_WRITE_FAIL, "Journal is closed: " + filePath);
+	}
+
+	/**
+	 * Sync every record appended, then close the file
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closing)
+				return;
+			requested = appended;
+			closing = true;
+			this.notifyAll();
+		}
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			log.severe("Failed to close file: " + filePath);
+		}
+		if (failure != null)
+			throw new HelixRuntimeException(Constants.ERR_RES_WRITE_FAIL, "Failed to write journal: " + filePath, failure);
+	}
+
+	/**
+	 * Replace a file with new contents so that, whatever happens, the file
+	 * holds either all of the old contents or all of the new ones. The new
+	 * contents are written next to it and synced, then moved over it
+	 * @param path - path of the file, relative to the absolute directory
+	 * @param compressed - whether to block-compress the new contents
+	 * @param contents - writes the new contents
+	 * @throws HelixRuntimeException if the new contents could not be written
+	 *
+	 * @see {@link Constants#ABS_PATH}
+	 */
+	public static void replaceAtomically(String path, boolean compressed, Contents contents) {
+		Path target = new File(Constants.ABS_PATH + path).toPath();
+		Path temp = new File(Constants.ABS_PATH + path + ".tmp").toPath();
+
+		try {
+			try (BinaryWriter out = new BinaryWriter(path + ".tmp", true, BinaryWriter.DEFAULT_BUFFER_SIZE, false, compressed)) {
+				contents.write(out);
+			}
+			try (FileChannel written = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				written.force(true);
+			}
+
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				log.warning("Can't replace " + path + " atomically, replacing it in place");
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+			syncDirectory(target);
+		} catch (IOException e) {
+			log.severe("Failed to write file: " + target);
+			throw new HelixRuntimeException(Constants.ERR_RES_WRITE_FAIL, "Failed to write file: " + target, e);
+		}
+	}
+
+	/**
+	 * Sync the directory a file was moved into, so that the move itself
+	 * survives a crash. Not every platform allows this
+	 */
+	private static void syncDirectory(Path file) {
+		Path directory = file.toAbsolutePath().getParent();
+		if (directory == null)
+			return;
+		try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+			dir.force(true);
+		} catch (IOException e) {
+			log.fine("Can't sync directory " + directory);
+		}
+	}
+
+	/**
+	 * Writes the contents of a file for {@link Journal#replaceAtomically}
+	 */
+	public interface Contents {
+		public void write(BinaryWriter out);
+	}
+
+	/**
+	 * Reads the journal from the start without moving the position appends are written at
+	 */
+	private static final class ReplayChannel implements ReadableByteChannel {
+		private final FileChannel file;
+		private long position;
+
+		ReplayChannel(FileChannel file) {
+			this.file = file;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			int n = file.read(dst, position);
+			if (n > 0)
+				position += n;
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return file.isOpen();
+		}
+
+		/**
+		 * Leaves the journal open
+		 */
+		@Override
+		public void close() {
+		}
+	}
+
+	// Getters and Setters
+
+	/**
+	 * @return - number of records in the journal, synced or not
+	 */
+	public synchronized long getRecordCount() {
+		return appended;
+	}
+
+	/**
+	 * @return - number of whole records found when the journal was opened
+	 */
+	public int getRecovered() {
+		return recovered;
+	}
+
+	/**
+	 * @return - number of records synced to disk
+	 */
+	public synchronized long getSynced() {
+		return synced;
+	}
+
+	public synchronized int getGroupSize() {
+		return groupSize;
+	}
+
+	/**
+	 * Set how many queued records make the journal sync without waiting for
+	 * {@link Journal#getGroupDelay}
+	 * @param groupSize - records per group, at least 1
+	 */
+	public synchronized void setGroupSize(int groupSize) {
+		this.groupSize = Math.max(groupSize, 1);
+		this.notifyAll();
+	}
+
+	public synchronized long getGroupDelay() {
+		return groupDelay;
+	}
+
+	/**
+	 * Set the longest a record waits to be synced. Longer delays make for
+	 * bigger groups and fewer syncs, but more records lost in a crash
+	 * @param groupDelay - delay in milliseconds
+	 */
+	public synchronized void setGroupDelay(long groupDelay) {
+		this.groupDelay = Math.max(groupDelay, 0);
+		this.notifyAll();
+	}
+}
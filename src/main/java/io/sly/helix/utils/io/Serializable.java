@@ -1,27 +1,41 @@
 package io.sly.helix.utils.io;
 
 /**
- * Serializable interface to enable data redaing/writing
+ * Serializable interface to enable data reading/writing
+ * <br><br>
+ * An object writes its fields one after another with {@link Serializable#write},
+ * and reads them back in the same order with {@link Serializable#parse}.
+ * When the fields written change, bump {@link Serializable#getSchemaVersion}
+ * and have {@link Serializable#parse} handle data written by older versions.
+ * Only add fields to the end of what is written, so that older versions of
+ * the game can still read what they know and skip the rest
  * @author Sly
  *
+ * @see {@link io.sly.helix.game.save.WorldSnapshot}
  */
 public interface Serializable {
 
 	/**
-	 * Write object through a specified {@link BinaryWriter}
-	 * at a given position
+	 * Version of the data written by {@link Serializable#write}. Bump whenever
+	 * the data written changes
+	 * @return - schema version, 0 unless overridden
+	 */
+	public default int getSchemaVersion() {
+		return 0;
+	}
+
+	/**
+	 * Write the object to the end of a {@link BinaryWriter}
 	 * @param writer - Writer to write object with
-	 * @param pos - Position in the file to write to
-	 * @return - Whether or not writing was successful
 	 */
-	public boolean write(BinaryWriter writer, int pos);
-	
+	public void write(BinaryWriter writer);
+
 	/**
-	 * Read an object from a specified {@link BinaryReader}
-	 * at a given position
-	 * @param reader - Reader to read the object data with
-	 * @param pos - Position of the file to read from
-	 * @return - Whether or not reading was successful
+	 * Read the object back from the current position of a {@link BinaryCursor},
+	 * leaving the cursor just past the object's data. Lets objects be read in
+	 * one after another without the whole file in memory
+	 * @param cursor - Cursor to read the object data with
+	 * @param version - {@link Serializable#getSchemaVersion} of the object that wrote the data
 	 */
-	public Serializable parse(BinaryReader reader, int pos);
+	public void parse(BinaryCursor cursor, int version);
 }
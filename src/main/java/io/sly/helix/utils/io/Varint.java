@@ -0,0 +1,72 @@
+package io.sly.helix.utils.io;
+
+/**
+ * Helpers for the variable-length integers written by {@link BinaryWriter#writeVarLong}
+ * <br><br>
+ * A varint (LEB128) stores 7 bits of the value per byte, lowest first, with
+ * the top bit of each byte set if another byte follows. Values under 128
+ * take a single byte, and a long never takes more than {@link Varint#MAX_BYTES}
+ * <br><br>
+ * Signed values are zigzag encoded first, so that small negative numbers
+ * stay small: 0, -1, 1, -2, 2 ... become 0, 1, 2, 3, 4 ...
+ *
+ * @author Sly
+ *
+ */
+public final class Varint {
+
+	/**
+	 * Most bytes a varint can take
+	 */
+	public static final int MAX_BYTES = 10;
+
+	private Varint() {
+	}
+
+	/**
+	 * @param value - value to encode, taken as unsigned
+	 * @return - number of bytes the value takes as a varint
+	 */
+	public static int size(long value) {
+		int bits = Long.SIZE - Long.numberOfLeadingZeros(value | 1);
+		return (bits + 6) / 7;
+	}
+
+	/**
+	 * Map a signed value onto an unsigned one, small magnitudes first
+	 */
+	public static int zigZag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	/**
+	 * Map a signed value onto an unsigned one, small magnitudes first
+	 */
+	public static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/**
+	 * Undo {@link Varint#zigZag(int)}
+	 */
+	public static int unZigZag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Undo {@link Varint#zigZag(long)}
+	 */
+	public static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Get the whole number of steps nearest to a value, as used by
+	 * {@link BinaryWriter#writeQuantized}
+	 * @param value - value to quantize
+	 * @param step - size of each step, greater than 0
+	 */
+	public static long quantize(float value, float step) {
+		return Math.round((double) value / step);
+	}
+}
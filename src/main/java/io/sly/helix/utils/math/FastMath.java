@@ -0,0 +1,186 @@
+package io.sly.helix.utils.math;
+
+/**
+ * Fast approximations of trigonometric functions, for per-frame code where a
+ * little accuracy can be traded for speed
+ * <ul>
+ * 	<li>{@link FastMath#sin} and {@link FastMath#cos} look up a table of
+ * 	{@link FastMath#SIN_COUNT} entries over the circle, accurate to about 0.0006,
+ * 	for angles within {@link FastMath#TABLE_RANGE} radians of 0. Larger angles
+ * 	can't be turned into a table index accurately as floats, so they fall back
+ * 	to {@link Math#sin} and {@link Math#cos}</li>
+ * 	<li>{@link FastMath#atan2} uses a polynomial, accurate to within
+ * 	{@link FastMath#ATAN2_MAX_ERROR} radians</li>
+ * </ul>
+ *
+ * @author Sly
+ *
+ */
+public final class FastMath {
+
+	public static final float PI = (float) Math.PI;
+	public static final float PI2 = PI * 2;
+	public static final float HALF_PI = PI / 2;
+
+	public static final float DEG_TO_RAD = PI / 180;
+	public static final float RAD_TO_DEG = 180 / PI;
+
+	/**
+	 * Largest difference between {@link FastMath#atan2} and
+	 * {@link Math#atan2} (radians)
+	 */
+	public static final float ATAN2_MAX_ERROR = 0.000005f;
+
+	private static final int SIN_BITS = 14;
+	/**
+	 * Number of entries in the sine table
+	 */
+	public static final int SIN_COUNT = 1 << SIN_BITS;
+	private static final int SIN_MASK = SIN_COUNT - 1;
+	private static final float RAD_TO_INDEX = SIN_COUNT / PI2;
+	private static final float DEG_TO_INDEX = SIN_COUNT / 360f;
+	/**
+	 * Offset of a quarter turn, to read cosines off the sine table
+	 */
+	private static final int COS_OFFSET = SIN_COUNT / 4;
+
+	/**
+	 * Largest table index an angle is scaled to before it is looked up. Up to
+	 * 2^22 a float is precise to half an index; past it the index drifts by
+	 * whole entries, and past 2^31 it saturates
+	 */
+	private static final float MAX_INDEX = 1 << 22;
+	/**
+	 * Largest angle {@link FastMath#sin} and {@link FastMath#cos} look up in
+	 * the table, either way from 0 (radians, about 256 turns). Anything larger
+	 * is passed to {@link Math#sin} and {@link Math#cos} instead
+	 */
+	public static final float TABLE_RANGE = MAX_INDEX / RAD_TO_INDEX;
+	/**
+	 * {@link FastMath#TABLE_RANGE} in degrees
+	 */
+	public static final float TABLE_RANGE_DEG = MAX_INDEX / DEG_TO_INDEX;
+
+	private static final float[] SIN_TABLE = new float[SIN_COUNT];
+
+	static {
+		for (int i = 0; i < SIN_COUNT; i++) {
+			SIN_TABLE[i] = (float) Math.sin((i + 0.5) / SIN_COUNT * Math.PI * 2);
+		}
+	}
+
+	private FastMath() {
+	}
+
+	/**
+	 * @param radians - angle (radians)
+	 * @return - approximate sine of the angle, exact beyond {@link FastMath#TABLE_RANGE}
+	 */
+	public static float sin(float radians) {
+		float index = radians * RAD_TO_INDEX;
+		if (!(Math.abs(index) < MAX_INDEX))
+			return (float) Math.sin(radians);
+		return SIN_TABLE[(int) index & SIN_MASK];
+	}
+
+	/**
+	 * @param radians - angle (radians)
+	 * @return - approximate cosine of the angle, exact beyond {@link FastMath#TABLE_RANGE}
+	 */
+	public static float cos(float radians) {
+		float index = radians * RAD_TO_INDEX;
+		if (!(Math.abs(index) < MAX_INDEX))
+			return (float) Math.cos(radians);
+		return SIN_TABLE[((int) index + COS_OFFSET) & SIN_MASK];
+	}
+
+	/**
+	 * @param degrees - angle (degrees)
+	 * @return - approximate sine of the angle, exact beyond {@link FastMath#TABLE_RANGE_DEG}
+	 */
+	public static float sinDeg(float degrees) {
+		float index = degrees * DEG_TO_INDEX;
+		if (!(Math.abs(index) < MAX_INDEX))
+			return (float) Math.sin(Math.toRadians(degrees));
+		return SIN_TABLE[(int) index & SIN_MASK];
+	}
+
+	/**
+	 * @param degrees - angle (degrees)
+	 * @return - approximate cosine of the angle, exact beyond {@link FastMath#TABLE_RANGE_DEG}
+	 */
+	public static float cosDeg(float degrees) {
+		float index = degrees * DEG_TO_INDEX;
+		if (!(Math.abs(index) < MAX_INDEX))
+			return (float) Math.cos(Math.toRadians(degrees));
+		return SIN_TABLE[((int) index + COS_OFFSET) & SIN_MASK];
+	}
+
+	/**
+	 * Approximate {@link Math#atan2}, to within {@link FastMath#ATAN2_MAX_ERROR}.
+	 * Signed zeros are handled the same way, so (-0, -1) is -PI and (0, -0) is PI
+	 *
+	 * @param y - y coordinate
+	 * @param x - x coordinate
+	 * @return - angle of (x, y) from the positive x axis (-PI to PI radians), with the sign of y
+	 */
+	public static float atan2(float y, float x) {
+		float ax = Math.abs(x), ay = Math.abs(y);
+		float angle = 0;
+		if (ax != 0 || ay != 0) {
+			// atan of the smaller over the larger stays in [0, 1], where the polynomial is accurate
+			boolean steep = ay > ax;
+			float z = steep ? ax / ay : ay / ax;
+			float z2 = z * z;
+			angle = z * (0.99997726f + z2 * (-0.33262347f + z2 * (0.19354346f
+					+ z2 * (-0.11643287f + z2 * (0.05265332f + z2 * -0.01172120f)))));
+			if (steep)
+				angle = HALF_PI - angle;
+		}
+
+		// Sign bits rather than comparisons, so -0 counts as negative like it does for Math.atan2
+		if (Float.floatToRawIntBits(x) < 0)
+			angle = PI - angle;
+		return Float.floatToRawIntBits(y) < 0 ? -angle : angle;
+	}
+
+	/**
+	 * Approximate angle of (x, y) in degrees, to within
+	 * {@link FastMath#ATAN2_MAX_ERROR} radians
+	 *
+	 * @param y - y coordinate
+	 * @param x - x coordinate
+	 * @return - angle of (x, y) from the positive x axis (0 to 360 degrees)
+	 */
+	public static float atan2Deg360(float y, float x) {
+		float degrees = atan2(y, x) * RAD_TO_DEG;
+		return degrees < 0 ? degrees + 360 : degrees;
+	}
+
+	/**
+	 * @param degrees - angle (degrees)
+	 * @return - angle (radians)
+	 */
+	public static float toRadians(float degrees) {
+		return degrees * DEG_TO_RAD;
+	}
+
+	/**
+	 * @param radians - angle (radians)
+	 * @return - angle (degrees)
+	 */
+	public static float toDegrees(float radians) {
+		return radians * RAD_TO_DEG;
+	}
+
+	/**
+	 * Wrap an angle into [0, 360)
+	 *
+	 * @param degrees - angle (degrees)
+	 * @return - the same angle, between 0 and 360 degrees
+	 */
+	public static float normalizeDegrees(float degrees) {
+		degrees %= 360;
+		return degrees < 0 ? degrees + 360 : degrees;
+	}
+}
@@ -2,6 +2,10 @@ package io.sly.helix.utils.math;
 
 /**
  * Some helpful utilities to use when working with numbers
+ * <br><br>
+ * The <code>int</code>, <code>long</code>, <code>float</code> and
+ * <code>double</code> overloads never box, so prefer them over the
+ * {@link Number} versions in anything that runs every frame
  * 
  * @author Sly
  *
@@ -25,6 +29,67 @@ public class NumberUtils {
 			return val;
 	}
 
+	/**
+	 * Clamp a number between a minimum and maximum value
+	 * 
+	 * @param val - value to clamp
+	 * @param min - minimum value
+	 * @param max - maximum value
+	 * @return - clamped value
+	 */
+	public static int clamp(final int val, final int min, final int max) {
+		return val < min ? min : val > max ? max : val;
+	}
+
+	/**
+	 * @see {@link NumberUtils#clamp(int, int, int)}
+	 */
+	public static long clamp(final long val, final long min, final long max) {
+		return val < min ? min : val > max ? max : val;
+	}
+
+	/**
+	 * @see {@link NumberUtils#clamp(int, int, int)}
+	 */
+	public static float clamp(final float val, final float min, final float max) {
+		return val < min ? min : val > max ? max : val;
+	}
+
+	/**
+	 * @see {@link NumberUtils#clamp(int, int, int)}
+	 */
+	public static double clamp(final double val, final double min, final double max) {
+		return val < min ? min : val > max ? max : val;
+	}
+
+	/**
+	 * Clamp every value in an array between a minimum and maximum value, in place
+	 * 
+	 * @param values - values to clamp
+	 * @param min    - minimum value
+	 * @param max    - maximum value
+	 * @return - values
+	 */
+	public static float[] clamp(final float[] values, final float min, final float max) {
+		return clamp(values, min, max, values.length);
+	}
+
+	/**
+	 * Clamp the first count values in an array between a minimum and maximum value, in place
+	 * 
+	 * @param values - values to clamp
+	 * @param min    - minimum value
+	 * @param max    - maximum value
+	 * @param count  - number of values to clamp
+	 * @return - values
+	 */
+	public static float[] clamp(final float[] values, final float min, final float max, final int count) {
+		for (int i = 0; i < count; i++) {
+			values[i] = Math.min(Math.max(values[i], min), max);
+		}
+		return values;
+	}
+
 	/**
 	 * Loop a number between a minimum and maximum value
 	 * 
@@ -42,6 +107,39 @@ public class NumberUtils {
 			return val;
 	}
 
+	/**
+	 * Loop a number between a minimum and maximum value
+	 * 
+	 * @param val - value to loop
+	 * @param min - minimum value
+	 * @param max - maximum value
+	 * @return - looped number
+	 */
+	public static int loop(final int val, final int min, final int max) {
+		return val < min ? max : val > max ? min : val;
+	}
+
+	/**
+	 * @see {@link NumberUtils#loop(int, int, int)}
+	 */
+	public static long loop(final long val, final long min, final long max) {
+		return val < min ? max : val > max ? min : val;
+	}
+
+	/**
+	 * @see {@link NumberUtils#loop(int, int, int)}
+	 */
+	public static float loop(final float val, final float min, final float max) {
+		return val < min ? max : val > max ? min : val;
+	}
+
+	/**
+	 * @see {@link NumberUtils#loop(int, int, int)}
+	 */
+	public static double loop(final double val, final double min, final double max) {
+		return val < min ? max : val > max ? min : val;
+	}
+
 	/**
 	 * <pre>
 	 * Example Call: 
@@ -62,4 +160,47 @@ public class NumberUtils {
 			return result;
 
 	}
+
+	/**
+	 * @see {@link NumberUtils#lerp(float, float, float)}
+	 */
+	public static double lerp(double val, double target, double change) {
+		if (Math.abs(val - target) < change)
+			return target;
+		return (val * (1.0 - change)) + (target * change);
+	}
+
+	/**
+	 * Linearly interpolate every value in an array towards its target, in place
+	 * 
+	 * @param val    - Values to interpolate
+	 * @param target - Target value of each value
+	 * @param change - Percent change by tick (< 1)
+	 * @return - val
+	 * 
+	 * @see {@link NumberUtils#lerp(float, float, float)}
+	 */
+	public static float[] lerp(float[] val, float[] target, float change) {
+		return lerp(val, target, change, val.length);
+	}
+
+	/**
+	 * Linearly interpolate the first count values in an array towards their targets, in place
+	 * 
+	 * @param val    - Values to interpolate
+	 * @param target - Target value of each value
+	 * @param change - Percent change by tick (< 1)
+	 * @param count  - number of values to interpolate
+	 * @return - val
+	 * 
+	 * @see {@link NumberUtils#lerp(float, float, float)}
+	 */
+	public static float[] lerp(float[] val, float[] target, float change, int count) {
+		float keep = 1.0f - change;
+		for (int i = 0; i < count; i++) {
+			float v = val[i], t = target[i];
+			val[i] = Math.abs(v - t) < change ? t : (v * keep) + (t * change);
+		}
+		return val;
+	}
 }
@@ -4,6 +4,17 @@ import com.badlogic.gdx.math.Vector2;
 
 /**
  * A 2 Dimensional Vector class with some basic operations
+ * <br><br>
+ * Coordinates are always read and written through {@link Vector2D#getX},
+ * {@link Vector2D#getY}, {@link Vector2D#setX} and {@link Vector2D#setY}, so
+ * subclasses can keep them somewhere else
+ * <br><br>
+ * Operations come in three forms: the plain ones (<code>add</code>,
+ * <code>sub</code>, ...) return a new vector, the <code>Local</code> ones
+ * ({@link Vector2D#addLocal}, {@link Vector2D#scl}, {@link Vector2D#nor}, ...)
+ * modify this vector and return it for chaining, and the overloads taking an
+ * <code>out</code> vector write the result there. Use the last two in
+ * per-frame code to avoid allocating
  * @author Sly
  *
  */
@@ -32,6 +43,27 @@ public class Vector2D {
 		this(x.floatValue(), y.floatValue());
 	}
 
+	/**
+	 * Set the coordinates of this Vector2
+	 * @param x
+	 * @param y
+	 * @return - this Vector2
+	 */
+	public Vector2D set(float x, float y) {
+		this.setX(x);
+		this.setY(y);
+		return this;
+	}
+
+	/**
+	 * Copy the coordinates of another {@link Vector2D} into this one
+	 * @param other
+	 * @return - this Vector2
+	 */
+	public Vector2D set(Vector2D other) {
+		return this.set(other.getX(), other.getY());
+	}
+
 	/**
 	 * Sub another {@link Vector2D} from this one
 	 * (this - other)
@@ -39,7 +71,7 @@ public class Vector2D {
 	 * @return - a new resultant Vector2 from the operation
 	 */
 	public Vector2D sub(Vector2D other) {
-		return new Vector2D(this.x - other.x, this.y - other.y);
+		return new Vector2D(this.getX() - other.getX(), this.getY() - other.getY());
 	}
 
 	/**
@@ -50,7 +82,38 @@ public class Vector2D {
 	 * @return - a new resultant Vector2 from the operation
 	 */
 	public Vector2D sub(float x, float y) {
-		return this.sub(new Vector2D(x, y));
+		return new Vector2D(this.getX() - x, this.getY() - y);
+	}
+
+	/**
+	 * Sub another {@link Vector2D} from this one into an output vector
+	 * (out = this - other)
+	 * @param other
+	 * @param out - Vector2 to store the result in. May be this or other
+	 * @return - out
+	 */
+	public Vector2D sub(Vector2D other, Vector2D out) {
+		return out.set(this.getX() - other.getX(), this.getY() - other.getY());
+	}
+
+	/**
+	 * Sub another {@link Vector2D} from this one in place
+	 * (this = this - other)
+	 * @param other
+	 * @return - this Vector2
+	 */
+	public Vector2D subLocal(Vector2D other) {
+		return this.subLocal(other.getX(), other.getY());
+	}
+
+	/**
+	 * Sub a set of coordinates from this Vector2 in place
+	 * @param x
+	 * @param y
+	 * @return - this Vector2
+	 */
+	public Vector2D subLocal(float x, float y) {
+		return this.set(this.getX() - x, this.getY() - y);
 	}
 
 	/**
@@ -59,7 +122,7 @@ public class Vector2D {
 	 * @return - a new resultant Vector2 from the operation
 	 */
 	public Vector2D add(Vector2D other) {
-		return new Vector2D(other.x + x, other.y + y);
+		return new Vector2D(other.getX() + getX(), other.getY() + getY());
 	}
 
 	/**
@@ -69,7 +132,48 @@ public class Vector2D {
 	 * @return - a new resultant Vector2 from the operation
 	 */
 	public Vector2D add(float x, float y) {
-		return this.add(new Vector2D(x, y));
+		return new Vector2D(this.getX() + x, this.getY() + y);
+	}
+
+	/**
+	 * Add a {@link Vector2D} to this one into an output vector
+	 * (out = this + other)
+	 * @param other - Other Vector2 to add
+	 * @param out - Vector2 to store the result in. May be this or other
+	 * @return - out
+	 */
+	public Vector2D add(Vector2D other, Vector2D out) {
+		return out.set(this.getX() + other.getX(), this.getY() + other.getY());
+	}
+
+	/**
+	 * Add a {@link Vector2D} to this one in place
+	 * @param other - Other Vector2 to add
+	 * @return - this Vector2
+	 */
+	public Vector2D addLocal(Vector2D other) {
+		return this.addLocal(other.getX(), other.getY());
+	}
+
+	/**
+	 * Add a set of coordinates to this Vector2 in place
+	 * @param x
+	 * @param y
+	 * @return - this Vector2
+	 */
+	public Vector2D addLocal(float x, float y) {
+		return this.set(this.getX() + x, this.getY() + y);
+	}
+
+	/**
+	 * Add a scaled {@link Vector2D} to this one in place
+	 * (this = this + other * scalar)
+	 * @param other - Other Vector2 to add
+	 * @param scalar - amount to scale other by
+	 * @return - this Vector2
+	 */
+	public Vector2D mulAdd(Vector2D other, float scalar) {
+		return this.addLocal(other.getX() * scalar, other.getY() * scalar);
 	}
 
 	/**
@@ -78,7 +182,39 @@ public class Vector2D {
 	 * @return - a new resultant Vector2 from the operation
 	 */
 	public Vector2D multiply(float scalar) {
-		return new Vector2D(this.x * scalar, this.y * scalar);
+		return new Vector2D(this.getX() * scalar, this.getY() * scalar);
+	}
+
+	/**
+	 * Multiply this Vector2 by a scalar value into an output vector
+	 * @param scalar
+	 * @param out - Vector2 to store the result in. May be this
+	 * @return - out
+	 */
+	public Vector2D multiply(float scalar, Vector2D out) {
+		return out.set(this.getX() * scalar, this.getY() * scalar);
+	}
+
+	/**
+	 * Multiply this Vector2 by a scalar value in place
+	 * @param scalar
+	 * @return - this Vector2
+	 */
+	public Vector2D scl(float scalar) {
+		return this.set(this.getX() * scalar, this.getY() * scalar);
+	}
+
+	/**
+	 * Turn this Vector2 into a Unit Vector in place. Zero vectors are left as they are
+	 * @return - this Vector2
+	 * 
+	 * @see {@link Vector2D#getUnitVector}
+	 */
+	public Vector2D nor() {
+		float len = this.length();
+		if (len == 0)
+			return this;
+		return this.set(this.getX() / len, this.getY() / len);
 	}
 
 	/**
@@ -86,62 +222,84 @@ public class Vector2D {
 	 * @return length (double)
 	 */
 	public float length() {
-		return (float)Math.pow(lengthSq(), 0.5);
+		return (float)Math.sqrt(lengthSq());
 	}
 
 	public float lengthSq() {
-		double disX = Math.pow(this.x, 2);
-		double disY = Math.pow(this.y, 2);
-		return (float)(disX + disY);
+		float x = this.getX(), y = this.getY();
+		return x * x + y * y;
 	}
 	
 	public float getDistToSq(Vector2D other) {
-		double disX = Math.pow(other.x - x, 2);
-		double disY = Math.pow(other.y - y, 2);
-		return (float)(disX + disY);
+		return this.dst2(other.getX(), other.getY());
 	}
 
 	public float getDistTo(Vector2D other) {
-		return (float)Math.pow(getDistToSq(other), 0.5);
+		return this.dst(other.getX(), other.getY());
+	}
+
+	/**
+	 * Get the squared distance to a point
+	 * @param x
+	 * @param y
+	 * @return squared distance
+	 */
+	public float dst2(float x, float y) {
+		float dx = x - this.getX(), dy = y - this.getY();
+		return dx * dx + dy * dy;
 	}
 
-	/*
+	/**
+	 * Get the distance to a point
+	 * @param x
+	 * @param y
+	 * @return distance
+	 */
+	public float dst(float x, float y) {
+		return (float)Math.sqrt(this.dst2(x, y));
+	}
+
+	/**
 	 * Get the angle of this Vector2 in degrees,
 	 * relative to the positive x axis
+	 * @return angle (0 to 360 degrees)
+	 * 
+	 * @see {@link Vector2D#getAngleFast}
 	 */
 	public float getAngle() {
-		double angle = 0;
-		double sin = 0,
-			   asin = 0,
-			   cos = 0;
-		
-		double len = this.length();
-		if (len == 0)
-			return 0f;
+		double angle = Math.toDegrees(Math.atan2(getY(), getX()));
+		return (float)(angle < 0 ? angle + 360 : angle);
+	}
 
-		sin = y / len;
-		cos = x / len;
-		asin = Math.asin(sin);
-		
-		boolean firstQuadrant = (sin >= 0 && cos >= 0);
-		boolean secondQuadrant = (sin >= 0 && cos < 0);
-		boolean thirdQuadrant = (sin < 0 && cos < 0);
-		boolean fourthQuadrant = (sin < 0 && cos >= 0);
-		
-		if(firstQuadrant)
-			angle = asin;
-		else if(secondQuadrant)
-			angle = Math.PI - asin;
-		else if(thirdQuadrant)
-			angle = Math.PI - asin;
-		else if(fourthQuadrant)
-			angle = 2 * Math.PI + asin;
-		
-		return (float)Math.toDegrees(angle);
+	/**
+	 * Get the angle of this Vector2 in degrees, relative to the positive x
+	 * axis, using {@link FastMath#atan2}. Off by at most
+	 * {@link FastMath#ATAN2_MAX_ERROR} radians
+	 * @return angle (0 to 360 degrees)
+	 */
+	public float getAngleFast() {
+		return FastMath.atan2Deg360(getY(), getX());
 	}
 
+	/**
+	 * Get the angle of (this - target) in degrees
+	 * @param target
+	 * @return angle (0 to 360 degrees)
+	 */
 	public float getPointDirection(Vector2D target) {
-		return this.sub(target).getAngle();
+		double angle = Math.toDegrees(Math.atan2(getY() - target.getY(), getX() - target.getX()));
+		return (float)(angle < 0 ? angle + 360 : angle);
+	}
+
+	/**
+	 * Get the angle of (this - target) in degrees using {@link FastMath#atan2}
+	 * @param target
+	 * @return angle (0 to 360 degrees)
+	 * 
+	 * @see {@link Vector2D#getAngleFast}
+	 */
+	public float getPointDirectionFast(Vector2D target) {
+		return FastMath.atan2Deg360(getY() - target.getY(), getX() - target.getX());
 	}
 	
 	/**
@@ -149,13 +307,19 @@ public class Vector2D {
 	 * @return a Unit Vector of this Vector2
 	 */
 	public Vector2D getUnitVector() {
-		Vector2D vector = this.copy();
-		double mag = vector.length();
+		return this.getUnitVector(new Vector2D(0, 0));
+	}
+
+	/**
+	 * Get a Unit Vector of this Vector2 into an output vector
+	 * @param out - Vector2 to store the result in. May be this
+	 * @return - out, or (0, 0) if this Vector2 has no length
+	 */
+	public Vector2D getUnitVector(Vector2D out) {
+		float mag = this.length();
 		if(mag == 0)
-			return new Vector2D(0 ,0);
-		
-		vector = new Vector2D(vector.getX() / mag, vector.getY() / mag);
-		return vector;
+			return out.set(0, 0);
+		return out.set(this.getX() / mag, this.getY() / mag);
 	}
 
 	/**
@@ -163,7 +327,7 @@ public class Vector2D {
 	 * @return a copy of this Vector2
 	 */
 	public Vector2D copy() {
-		return new Vector2D(x, y);
+		return new Vector2D(getX(), getY());
 	}
 		
 	// Getters and Setters
@@ -184,7 +348,7 @@ public class Vector2D {
 	}
 
 	public Vector2 toVector2() {
-		return new Vector2(x, y);
+		return new Vector2(getX(), getY());
 	}
 
 	public static Vector2D fromVector2(Vector2 vector) {
@@ -194,8 +358,8 @@ public class Vector2D {
 	@Override
 	public String toString() {
 		return "Vector2 ["
-				+ "x=" + x
-				+ ",y=" + y
+				+ "x=" + getX()
+				+ ",y=" + getY()
 				+ ",len=" + this.length()
 				+ "]";
 	}
@@ -0,0 +1,183 @@
+package io.sly.helix.utils.math;
+
+/**
+ * Bulk operations over 2D vectors stored as separate <code>float[]</code> x
+ * and y columns, such as the ones in
+ * {@link io.sly.helix.game.entities.TransformStore}. Each kernel is a single
+ * branch-free loop over primitive arrays with no calls in it, which the JIT
+ * unrolls and turns into SIMD instructions on its own, so a pass over tens of
+ * thousands of vectors costs a fraction of the same loop over
+ * {@link Vector2D} objects
+ * <br><br>
+ * Every kernel works on the first <code>count</code> entries of its arrays
+ *
+ * @author Sly
+ *
+ */
+public final class VectorBatch {
+
+	private VectorBatch() {
+	}
+
+	/**
+	 * Add a fixed offset to every vector
+	 *
+	 * @param x     - x column
+	 * @param y     - y column
+	 * @param dx    - x offset
+	 * @param dy    - y offset
+	 * @param count - number of vectors
+	 */
+	public static void add(float[] x, float[] y, float dx, float dy, int count) {
+		for (int i = 0; i < count; i++) {
+			x[i] += dx;
+			y[i] += dy;
+		}
+	}
+
+	/**
+	 * Add another set of vectors to every vector, element by element
+	 * (x[i] += dx[i])
+	 *
+	 * @param x     - x column
+	 * @param y     - y column
+	 * @param dx    - x column to add
+	 * @param dy    - y column to add
+	 * @param count - number of vectors
+	 */
+	public static void add(float[] x, float[] y, float[] dx, float[] dy, int count) {
+		for (int i = 0; i < count; i++) {
+			x[i] += dx[i];
+			y[i] += dy[i];
+		}
+	}
+
+	/**
+	 * Add a scaled set of vectors to every vector, element by element
+	 * (x[i] += dx[i] * scalar). With directions as dx and dy and a time step
+	 * as scalar, this integrates movement
+	 *
+	 * @param x      - x column
+	 * @param y      - y column
+	 * @param dx     - x column to add
+	 * @param dy     - y column to add
+	 * @param scalar - amount to scale dx and dy by
+	 * @param count  - number of vectors
+	 */
+	public static void mulAdd(float[] x, float[] y, float[] dx, float[] dy, float scalar, int count) {
+		for (int i = 0; i < count; i++) {
+			x[i] += dx[i] * scalar;
+			y[i] += dy[i] * scalar;
+		}
+	}
+
+	/**
+	 * Multiply every vector by a scalar value
+	 *
+	 * @param x      - x column
+	 * @param y      - y column
+	 * @param scalar - value to multiply by
+	 * @param count  - number of vectors
+	 */
+	public static void scale(float[] x, float[] y, float scalar, int count) {
+		for (int i = 0; i < count; i++) {
+			x[i] *= scalar;
+			y[i] *= scalar;
+		}
+	}
+
+	/**
+	 * Turn every vector into a unit vector. Zero vectors are left as they are
+	 *
+	 * @param x     - x column
+	 * @param y     - y column
+	 * @param count - number of vectors
+	 */
+	public static void normalize(float[] x, float[] y, int count) {
+		for (int i = 0; i < count; i++) {
+			float lenSq = x[i] * x[i] + y[i] * y[i];
+			// Zero vectors scale by 1 instead of dividing by zero
+			float inv = lenSq > 0 ? 1f / (float) Math.sqrt(lenSq) : 1f;
+			x[i] *= inv;
+			y[i] *= inv;
+		}
+	}
+
+	/**
+	 * Get the length of every vector
+	 *
+	 * @param x     - x column
+	 * @param y     - y column
+	 * @param out   - array to store the lengths in
+	 * @param count - number of vectors
+	 * @return - out
+	 */
+	public static float[] length(float[] x, float[] y, float[] out, int count) {
+		for (int i = 0; i < count; i++) {
+			out[i] = (float) Math.sqrt(x[i] * x[i] + y[i] * y[i]);
+		}
+		return out;
+	}
+
+	/**
+	 * Get the squared distance from every vector to a point
+	 *
+	 * @param x     - x column
+	 * @param y     - y column
+	 * @param px    - x position of the point
+	 * @param py    - y position of the point
+	 * @param out   - array to store the squared distances in
+	 * @param count - number of vectors
+	 * @return - out
+	 */
+	public static float[] dst2(float[] x, float[] y, float px, float py, float[] out, int count) {
+		for (int i = 0; i < count; i++) {
+			float dx = x[i] - px, dy = y[i] - py;
+			out[i] = dx * dx + dy * dy;
+		}
+		return out;
+	}
+
+	/**
+	 * Get the distance from every vector to a point
+	 *
+	 * @param x     - x column
+	 * @param y     - y column
+	 * @param px    - x position of the point
+	 * @param py    - y position of the point
+	 * @param out   - array to store the distances in
+	 * @param count - number of vectors
+	 * @return - out
+	 */
+	public static float[] dst(float[] x, float[] y, float px, float py, float[] out, int count) {
+		for (int i = 0; i < count; i++) {
+			float dx = x[i] - px, dy = y[i] - py;
+			out[i] = (float) Math.sqrt(dx * dx + dy * dy);
+		}
+		return out;
+	}
+
+	/**
+	 * Find every vector within some distance of a point
+	 *
+	 * @param x      - x column
+	 * @param y      - y column
+	 * @param px     - x position of the point
+	 * @param py     - y position of the point
+	 * @param radius - search radius
+	 * @param out    - array to store the indices found in, at least count long
+	 * @param count  - number of vectors
+	 * @return - number of indices stored in out, in ascending order
+	 */
+	public static int withinRadius(float[] x, float[] y, float px, float py, float radius, int[] out, int count) {
+		float radiusSq = radius * radius;
+		int found = 0;
+		for (int i = 0; i < count; i++) {
+			float dx = x[i] - px, dy = y[i] - py;
+			// Always write, only keep the index if it is in range, so the loop has no branch
+			out[found] = i;
+			found += dx * dx + dy * dy <= radiusSq ? 1 : 0;
+		}
+		return found;
+	}
+}
@@ -0,0 +1,346 @@
+package io.sly.helix.game.entities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import io.sly.helix.game.BaseGame;
+import io.sly.helix.game.Data;
+import io.sly.helix.game.alarm.Event;
+import io.sly.helix.gfx.Screen;
+import io.sly.helix.utils.math.Vector2D;
+
+/**
+ * Checks that parallel updates are deterministic, and that they change and
+ * read objects the way {@link HelixEntityManager#setParallel} says they do
+ *
+ * @author Sly
+ */
+public class HelixEntityManagerTest {
+
+	private static final int ENTITIES = 4000;
+	private static final int TICKS = 60;
+	private static final float TICK = 1 / 60f;
+
+	/**
+	 * Entities that only read objects which don't move during an update end up
+	 * the same whether they are updated serially or in parallel
+	 */
+	@Test
+	public void parallelUpdateMatchesSerial() {
+		for (boolean store : new boolean[] { false, true }) {
+			String serial = this.runWalkers(null, store);
+			assertEquals(serial, this.runWalkers(new ForkJoinPool(1), store), "1 thread, store: " + store);
+			assertEquals(serial, this.runWalkers(new ForkJoinPool(4), store), "4 threads, store: " + store);
+			assertEquals(serial, this.runWalkers(new ForkJoinPool(16), store), "16 threads, store: " + store);
+		}
+	}
+
+	/**
+	 * Entities that read, move, spawn and free each other end up the same
+	 * however many threads update them
+	 */
+	@Test
+	public void parallelUpdateIsDeterministic() {
+		for (boolean store : new boolean[] { false, true }) {
+			String single = this.runHunters(new ForkJoinPool(1), store);
+			assertEquals(single, this.runHunters(new ForkJoinPool(4), store), "4 threads, store: " + store);
+			assertEquals(single, this.runHunters(new ForkJoinPool(16), store), "16 threads, store: " + store);
+			assertEquals(single, this.runHunters(new ForkJoinPool(16), store), "16 threads again, store: " + store);
+		}
+	}
+
+	@Test
+	public void serialUpdateChangesObjectsStraightAway() {
+		TestGame game = new TestGame(null, false);
+		Probe first = new Probe(game.getData(), new Vector2D(0, 0));
+		Probe second = new Probe(game.getData(), new Vector2D(100, 0));
+		first.other = second;
+		second.other = first;
+		game.manager.add(first);
+		game.manager.add(second);
+
+		game.manager.update(TICK);
+		assertEquals(1, first.seenX, 0);
+		assertEquals(100, first.otherX, 0);
+		assertEquals(1, second.otherX, 0);
+		assertNotEquals(0, first.spawnedId);
+	}
+
+	@Test
+	public void parallelUpdateDefersOnlyWritesThatRace() {
+		TestGame game = new TestGame(new ForkJoinPool(4), false);
+		Probe first = new Probe(game.getData(), new Vector2D(0, 0));
+		Probe second = new Probe(game.getData(), new Vector2D(100, 0));
+		first.other = second;
+		second.other = first;
+		game.manager.add(first);
+		game.manager.add(second);
+
+		game.manager.update(TICK);
+		// Each sees its own move straight away, and the other as it was when the update began
+		assertEquals(1, first.seenX, 0);
+		assertEquals(101, second.seenX, 0);
+		assertEquals(100, first.otherX, 0);
+		assertEquals(0, second.otherX, 0);
+		assertEquals(0, first.spawnedId);
+		assertEquals(1, first.getPos().getX(), 0);
+		assertEquals(101, second.getPos().getX(), 0);
+	}
+
+	private String runWalkers(ForkJoinPool pool, boolean store) {
+		TestGame game = new TestGame(pool, store);
+		Random random = new Random(7);
+		for (int i = 0; i < 40; i++) {
+			game.level.addObject(new Beacon(game.getData(), new Vector2D(random.nextInt(2000), random.nextInt(2000))));
+		}
+		for (int i = 0; i < ENTITIES; i++) {
+			Walker walker = game.getData().obtain(Walker.class, random.nextInt(2000), random.nextInt(2000));
+			walker.seed = random.nextInt();
+			game.manager.add(walker);
+			game.level.addObject(walker);
+		}
+		return this.run(game);
+	}
+
+	private String runHunters(ForkJoinPool pool, boolean store) {
+		TestGame game = new TestGame(pool, store);
+		Random random = new Random(7);
+		for (int i = 0; i < ENTITIES; i++) {
+			Class<? extends Seeded> type = i % 10 == 0 ? Hunter.class : Prey.class;
+			Seeded entity = game.getData().obtain(type, random.nextInt(2000), random.nextInt(2000));
+			entity.seed = random.nextInt();
+			game.manager.add(entity);
+			game.level.addObject(entity);
+		}
+		return this.run(game);
+	}
+
+	/**
+	 * Run the game for {@link HelixEntityManagerTest#TICKS} and sum up where it ended
+	 */
+	private String run(TestGame game) {
+		for (int i = 0; i < TICKS; i++) {
+			game.getData().getAlarms().advance(TICK);
+			game.manager.update(TICK);
+		}
+
+		long hash = 17;
+		for (int i = 0; i < game.manager.size(); i++) {
+			Seeded entity = (Seeded) game.manager.get(i);
+			hash = hash * 31 + entity.getClass().getSimpleName().hashCode();
+			hash = hash * 31 + entity.getId();
+			hash = hash * 31 + Float.floatToIntBits(entity.getPos().getX());
+			hash = hash * 31 + Float.floatToIntBits(entity.getPos().getY());
+			hash = hash * 31 + Float.floatToIntBits(entity.getDirection().getX());
+			hash = hash * 31 + Float.floatToIntBits(entity.getDirection().getY());
+			hash = hash * 31 + entity.seed;
+			hash = hash * 31 + entity.score;
+		}
+		TransformStore transforms = game.getData().getTransformStore();
+		int slots = transforms != null ? transforms.size() : 0;
+		for (int i = 0; i < slots; i++) {
+			hash = hash * 31 + transforms.getOwner(i).getId();
+		}
+		return "entities=" + game.manager.size() + " objects=" + game.level.getObjects().size()
+				+ " grid=" + game.level.getGrid().size() + " handles=" + game.getData().getHandles().size()
+				+ " slots=" + slots + " hash=" + hash;
+	}
+
+	private static TestGame game(GameObject object) {
+		return (TestGame) object.getData().getGame();
+	}
+
+	/**
+	 * Game with a single screen, never shown on a window
+	 */
+	private static final class TestGame extends BaseGame {
+		final HelixEntityManager manager;
+		final TestScreen level;
+
+		TestGame(ForkJoinPool pool, boolean store) {
+			super("io.sly.helix.game.entities", "test", 10, 10);
+			if (store)
+				this.getData().setTransformStore(new TransformStore(1024));
+			this.level = new TestScreen(this);
+			this.getData().addScreen(level);
+			this.manager = new HelixEntityManager(this.getData(), ENTITIES);
+			this.manager.setParallel(pool);
+		}
+
+		@Override
+		protected void start() {
+		}
+
+		@Override
+		public void setScreen(com.badlogic.gdx.Screen screen) {
+			// No window to size it to
+			this.screen = screen;
+		}
+	}
+
+	private static final class TestScreen extends Screen {
+		TestScreen(BaseGame game) {
+			super(game, 0);
+		}
+
+		@Override
+		protected void step(float delta) {
+		}
+
+		@Override
+		protected void draw(float delta) {
+		}
+
+		@Override
+		protected void create() {
+		}
+	}
+
+	private static final class Beacon extends GameObject {
+		Beacon(Data data, Vector2D pos) {
+			super(data, pos);
+		}
+
+		@Override
+		protected void step(float delta) {
+		}
+	}
+
+	private abstract static class Seeded extends HelixEntity {
+		int seed, score;
+
+		Seeded(Data data, Vector2D pos) {
+			super(data, pos);
+		}
+
+		int next() {
+			seed = seed * 1103515245 + 12345;
+			return seed;
+		}
+
+		@Override
+		protected void reset() {
+			seed = 0;
+			score = 0;
+		}
+	}
+
+	/**
+	 * Walks to the nearest beacon, reading its own position back as it moves,
+	 * and spawns, sets alarms and frees itself now and then
+	 */
+	private static final class Walker extends Seeded {
+		Walker(Data data, Vector2D pos) {
+			super(data, pos);
+		}
+
+		@Override
+		protected void step(float delta) {
+			int seed = this.next();
+			Beacon beacon = this.findNearest(Beacon.class);
+			if (beacon != null && this.distTo(beacon) > 4)
+				this.moveTo(beacon, 1.5f);
+			this.addPos(((seed >> 8) & 3) - 1.5f, 0);
+			this.addPos(0, ((seed >> 12) & 3) - 1.5f);
+
+			if ((seed & 1023) == 7) {
+				Walker child = this.getData().obtain(Walker.class, this.getPos().getX() + 1, this.getPos().getY());
+				child.seed = seed ^ 0x5bd1e995;
+				game(this).manager.add(child);
+				game(this).level.addObject(child);
+			}
+			if ((seed & 511) == 3) {
+				this.setAlarm(0, 0.05f, new Event() {
+					@Override
+					public void event() {
+						score += 100;
+						setDirection(0, 1);
+					}
+				});
+			}
+			if ((seed & 2047) == 13)
+				game(this).manager.free(this);
+		}
+	}
+
+	/**
+	 * Chases the nearest prey, pushing it or freeing it once it catches up
+	 */
+	private static final class Hunter extends Seeded {
+		Hunter(Data data, Vector2D pos) {
+			super(data, pos);
+		}
+
+		@Override
+		protected void step(float delta) {
+			int seed = this.next();
+			Prey prey = this.findNearest(Prey.class);
+			if (prey != null) {
+				if (this.distTo(prey) >= 4) {
+					this.moveTo(prey, 2);
+				} else {
+					score++;
+					if ((seed & 3) == 0)
+						game(this).manager.free(prey);
+					else
+						prey.addPos(5, -5);
+				}
+			}
+			if ((seed & 1023) == 7) {
+				Prey child = this.getData().obtain(Prey.class, this.getPos().getX() + 3, this.getPos().getY());
+				child.seed = seed ^ 0x5bd1e995;
+				game(this).manager.add(child);
+				game(this).level.addObject(child);
+			}
+		}
+	}
+
+	/**
+	 * Runs from the nearest hunter, and wanders or destroys itself otherwise
+	 */
+	private static final class Prey extends Seeded {
+		Prey(Data data, Vector2D pos) {
+			super(data, pos);
+		}
+
+		@Override
+		protected void step(float delta) {
+			int seed = this.next();
+			Hunter hunter = this.findNearest(Hunter.class);
+			if (hunter != null && this.distTo(hunter) < 50) {
+				float x = this.getPos().getX(), y = this.getPos().getY();
+				this.moveTo(2 * x - hunter.getPos().getX(), 2 * y - hunter.getPos().getY(), 1.5f);
+			} else {
+				this.addPos(((seed >> 8) & 3) - 1.5f, ((seed >> 12) & 3) - 1.5f);
+			}
+			if ((seed & 8191) == 13)
+				game(this).manager.destroy(this);
+		}
+	}
+
+	/**
+	 * Moves itself, then notes where it and another probe are
+	 */
+	private static final class Probe extends HelixEntity {
+		Probe other;
+		float seenX, otherX;
+		int spawnedId = -1;
+
+		Probe(Data data, Vector2D pos) {
+			super(data, pos);
+		}
+
+		@Override
+		protected void step(float delta) {
+			this.setPos(this.getPos().getX() + 1, this.getPos().getY());
+			seenX = this.getPos().getX();
+			otherX = other.getPos().getX();
+			spawnedId = this.getData().obtain(Beacon.class).getId();
+		}
+	}
+}